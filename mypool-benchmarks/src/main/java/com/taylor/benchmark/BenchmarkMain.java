@@ -0,0 +1,54 @@
+package com.taylor.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @ClassName: BenchmarkMain
+ * @Function: 依次以1,2,4...N个线程运行全部基准测试，N默认为CPU核数的2倍，可通过-Dbenchmark.maxThreads修改；
+ *            其余参数按JMH命令行解析，例如只运行某个基准：java -jar benchmarks.jar ConnectionBorrow
+ * @author Taylor
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		int maxThreads = Integer.getInteger("benchmark.maxThreads", Runtime.getRuntime().availableProcessors() * 2);
+		List<RunResult> results = new ArrayList<>();
+		for (int threads = 1; threads <= maxThreads; threads = nextThreads(threads, maxThreads)) {
+			Options options = new OptionsBuilder().parent(commandLine).threads(threads).build();
+			Collection<RunResult> runResults = new Runner(options).run();
+			results.addAll(runResults);
+		}
+		System.out.println();
+		System.out.println("线程数\t模式\t基准\t得分\t单位");
+		for (RunResult result : results) {
+			System.out.println(result.getParams().getThreads() + "\t" + result.getParams().getMode().shortLabel()
+					+ "\t" + result.getParams().getBenchmark() + paramsOf(result) + "\t"
+					+ String.format("%.3f", result.getPrimaryResult().getScore()) + "\t"
+					+ result.getPrimaryResult().getScoreUnit());
+		}
+	}
+
+	private static int nextThreads(int threads, int maxThreads) {
+		return threads < maxThreads && threads * 2 > maxThreads ? maxThreads : threads * 2;
+	}
+
+	private static String paramsOf(RunResult result) {
+		StringBuilder sb = new StringBuilder();
+		for (String key : result.getParams().getParamsKeys()) {
+			sb.append(sb.length() == 0 ? "(" : ",").append(key).append('=').append(result.getParams().getParam(key));
+		}
+		return sb.length() == 0 ? "" : sb.append(')').toString();
+	}
+
+}
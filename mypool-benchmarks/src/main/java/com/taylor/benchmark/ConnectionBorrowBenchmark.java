@@ -0,0 +1,89 @@
+package com.taylor.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.taylor.MyPool;
+import com.taylor.MyPoolDataSource;
+import com.taylor.PooledConnection;
+import com.taylor.stub.StubDriver;
+
+/**
+ * @ClassName: ConnectionBorrowBenchmark
+ * @Function: 连接借出/归还的吞吐量和延迟，连接来自StubDriver，不依赖数据库；线程数由BenchmarkMain或-t参数指定
+ * @author Taylor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionBorrowBenchmark {
+
+	@Param({ "10", "32" })
+	public int maxSize;
+
+	private MyPoolDataSource dataSource;
+
+	private MyPool pool;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		dataSource = MyPoolDataSource.builder()
+				.poolName("benchmark")
+				.driverClassName(StubDriver.class.getName())
+				.url(StubDriver.URL_PREFIX + "benchmark")
+				.initSize(maxSize)
+				.minIdle(maxSize)
+				.maxIdle(maxSize)
+				.maxSize(maxSize)
+				.eagerFill(true)
+				.connectionTimeout(30, TimeUnit.SECONDS)
+				.build();
+		pool = dataSource.getPool();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		dataSource.close();
+	}
+
+	/**
+	 * @desc borrowAndReturn(MyPool.getConnection + PooledConnection.close)
+	 * @author taylor
+	 */
+	@Benchmark
+	public PooledConnection borrowAndReturn() {
+		PooledConnection connection = pool.getConnection();
+		connection.close();
+		return connection;
+	}
+
+	/**
+	 * @desc jdbcBorrowAndReturn(经DataSource借出ProxyConnection并close归还，包含代理的状态恢复开销)
+	 * @author taylor
+	 */
+	@Benchmark
+	public Connection jdbcBorrowAndReturn() throws SQLException {
+		Connection connection = dataSource.getConnection();
+		connection.close();
+		return connection;
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.taylor.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.biframework.threads.ThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * @ClassName: FanOutBenchmark
+ * @Function: 任务在池线程中递归派生子任务(二叉树，2^depth个叶子任务)，比较QUEUE与WORK_STEALING模式完成整棵树的耗时
+ * @author Taylor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark {
+
+	@Param({ "QUEUE", "WORK_STEALING" })
+	public ThreadPool.ExecutionMode executionMode;
+
+	@Param({ "14" })
+	public int depth;
+
+	private ThreadPool threadPool;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		threadPool = ThreadPool.createThreadPool(false);
+		threadPool.setExecutionMode(executionMode);
+		threadPool.setMaxThreads(cores);
+		threadPool.setMinSpareThreads(cores);
+		threadPool.setQueueCapacity(1 << 20);
+		threadPool.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		threadPool.shutdown();
+	}
+
+	@Benchmark
+	public void fanOut() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		AtomicInteger pending = new AtomicInteger(1);
+		threadPool.run(new Node(depth, pending, done));
+		done.await();
+	}
+
+	private class Node implements Runnable {
+
+		private final int depth;
+
+		private final AtomicInteger pending;
+
+		private final CountDownLatch done;
+
+		Node(int depth, AtomicInteger pending, CountDownLatch done) {
+			this.depth = depth;
+			this.pending = pending;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			if (depth == 0) {
+				Blackhole.consumeCPU(50);
+			} else {
+				pending.addAndGet(2);
+				threadPool.run(new Node(depth - 1, pending, done));
+				threadPool.run(new Node(depth - 1, pending, done));
+			}
+			if (pending.decrementAndGet() == 0) {
+				done.countDown();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.taylor.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.biframework.threads.ThreadPool;
+import org.biframework.threads.ThreadPoolRunnable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @ClassName: ThreadPoolDispatchBenchmark
+ * @Function: ThreadPool.run/runIt/submit的派发延迟，每次操作提交一个空任务并等待它在池线程中执行
+ * @author Taylor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadPoolDispatchBenchmark {
+
+	@Param({ "HANDOFF", "QUEUE", "WORK_STEALING" })
+	public ThreadPool.ExecutionMode executionMode;
+
+	private ThreadPool threadPool;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		threadPool = ThreadPool.createThreadPool(false);
+		threadPool.setExecutionMode(executionMode);
+		threadPool.setRejectionPolicy(ThreadPool.RejectionPolicy.BLOCK);
+		threadPool.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		threadPool.shutdown();
+	}
+
+	@Benchmark
+	public void run() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		threadPool.run(new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+			}
+		});
+		started.await();
+	}
+
+	/**
+	 * @desc submit(经ExecutorService.submit提交并等待Future完成)
+	 * @author taylor
+	 */
+	@Benchmark
+	public Object submit() throws InterruptedException, ExecutionException {
+		return threadPool.submit(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}).get();
+	}
+
+	@Benchmark
+	public void runIt() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		threadPool.runIt(new ThreadPoolRunnable() {
+			@Override
+			public Object[] getInitData() {
+				return null;
+			}
+
+			@Override
+			public void runIt(Object[] thData) {
+				started.countDown();
+			}
+		});
+		started.await();
+	}
+
+}
@@ -0,0 +1,436 @@
+package com.taylor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName: BatchWriter
+ * @Function: 跨线程合并写入：各线程提交单行写入后立即得到Future，后台线程把积攒的写入按SQL分组成JDBC批量，
+ *            借一个连接在一个事务中执行，提交后按行完成各自的Future(值为该行的更新数)
+ *            一批最多maxBatchSize行，最早的写入最多等待maxDelay；maxDelay为0时不等待，执行上一批期间到达的写入自然合成下一批
+ *            同一SQL的写入按提交顺序执行，不同SQL之间不保证顺序
+ * @author Taylor
+ */
+public class BatchWriter implements AutoCloseable {
+
+	/**
+	 * 排队的写入最多为maxBatchSize的倍数，排满时提交方阻塞
+	 */
+	private static final int MAX_PENDING_BATCHES = 16;
+
+	/**
+	 * 后台线程空闲时检查关闭标志的间隔(毫秒)
+	 */
+	private static final long POLL_INTERVAL = 100;
+
+	private static final AtomicInteger SEQUENCE = new AtomicInteger(1);
+
+	private final IMyPool pool;
+
+	private final int maxBatchSize;
+
+	private final long maxDelayNanos;
+
+	private final BlockingQueue<Write> queue;
+
+	private final Thread flusher;
+
+	private volatile boolean closed;
+
+	/**
+	 * 设置后每次提交使所写表的查询缓存失效
+	 */
+	private volatile QueryCache queryCache;
+
+	/**
+	 * 执行的事务数和写入行数，两者之比即平均批量大小
+	 */
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private final AtomicLong writeCount = new AtomicLong();
+
+	/**
+	 * 批量失败后改为逐行执行的次数
+	 */
+	private final AtomicLong fallbackCount = new AtomicLong();
+
+	/**
+	 * @param pool
+	 * @param maxBatchSize
+	 *            一个事务最多合并的行数
+	 * @param maxDelay
+	 *            写入最多等待凑批的时间，0表示不等待
+	 * @param unit
+	 */
+	public BatchWriter(IMyPool pool, int maxBatchSize, long maxDelay, TimeUnit unit) {
+		if (maxBatchSize <= 0 || maxDelay < 0) {
+			throw new IllegalArgumentException("maxBatchSize必须大于0，maxDelay不能小于0");
+		}
+		this.pool = pool;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		this.queue = new LinkedBlockingQueue<>(maxBatchSize * MAX_PENDING_BATCHES);
+		this.flusher = new Thread(new Flusher(), "BatchWriter-" + SEQUENCE.getAndIncrement());
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * @desc write(提交一行写入，队列满时阻塞；返回的Future在所在批量提交后完成，值为该行的更新数，
+	 *       驱动不报告行数时为Statement.SUCCESS_NO_INFO)
+	 * @param sql
+	 *            INSERT/UPDATE/DELETE语句，相同SQL的写入合并为一个批量
+	 * @param params
+	 *            按顺序绑定到SQL中的?，数组被复制，提交后修改不影响本次写入
+	 * @author taylor
+	 */
+	public CompletableFuture<Integer> write(String sql, Object... params) {
+		if (closed) {
+			throw new IllegalStateException("BatchWriter已关闭");
+		}
+		Write write = new Write(sql, params);
+		try {
+			queue.put(write);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			write.future.completeExceptionally(e);
+			return write.future;
+		}
+		/**
+		 * 与close()竞争时后台线程可能已退出，此时撤回写入
+		 */
+		if (closed && queue.remove(write)) {
+			throw new IllegalStateException("BatchWriter已关闭");
+		}
+		return write.future;
+	}
+
+	/**
+	 * @desc close(不再接受写入，等待已提交的写入执行完毕)
+	 * @author taylor
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @desc setQueryCache(写入提交后使该缓存中所写表的条目失效)
+	 * @param queryCache
+	 * @author taylor
+	 */
+	public void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	public long getWriteCount() {
+		return writeCount.get();
+	}
+
+	public long getFallbackCount() {
+		return fallbackCount.get();
+	}
+
+	public int getPendingCount() {
+		return queue.size();
+	}
+
+	/**
+	 * @ClassName: Flusher
+	 * @Function: 后台线程：收集一批写入并执行，关闭后执行完剩余的写入再退出
+	 */
+	private class Flusher implements Runnable {
+
+		@Override
+		public void run() {
+			List<Write> batch = new ArrayList<>(maxBatchSize);
+			while (!closed || !queue.isEmpty()) {
+				try {
+					collect(batch);
+				} catch (InterruptedException e) {
+					// 不会被中断，已收集的写入照常执行
+				}
+				if (!batch.isEmpty()) {
+					flush(batch);
+					batch.clear();
+				}
+			}
+		}
+
+		/**
+		 * 等到第一条写入后，继续收集直到凑满maxBatchSize或第一条写入等待满maxDelay
+		 */
+		private void collect(List<Write> batch) throws InterruptedException {
+			Write first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			if (first == null) {
+				return;
+			}
+			batch.add(first);
+			long deadline = first.submittedAt + maxDelayNanos;
+			while (batch.size() < maxBatchSize) {
+				if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+					continue;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0 || closed) {
+					return;
+				}
+				Write next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+				if (next == null) {
+					return;
+				}
+				batch.add(next);
+			}
+		}
+	}
+
+	/**
+	 * @desc flush(在一个事务中执行一批写入；提交前失败时回滚并逐行单独执行，只让出错的行失败。
+	 *       提交本身失败时事务是否生效无法确定，逐行重做可能重复写入，整批以该异常失败，由调用方决定如何处理；
+	 *       提交之后的缓存失效和结果通知出错也不会让已提交的行再执行一次)
+	 * @param batch
+	 * @author taylor
+	 */
+	private void flush(List<Write> batch) {
+		Map<String, List<Write>> groups = new LinkedHashMap<>();
+		for (Write write : batch) {
+			groups.computeIfAbsent(write.sql, k -> new ArrayList<>()).add(write);
+		}
+		PooledConnection cnn;
+		try {
+			cnn = pool.getConnection();
+		} catch (RuntimeException e) {
+			for (Write write : batch) {
+				write.future.completeExceptionally(e);
+			}
+			return;
+		}
+		int[][] counts;
+		try {
+			try {
+				counts = executeInTransaction(cnn, groups);
+			} catch (CommitException e) {
+				System.out.println("批量写入提交失败，结果不确定，不再重试：" + e.getMessage());
+				cnn.markEvicted();
+				for (String sql : groups.keySet()) {
+					invalidateCache(sql);
+				}
+				for (Write write : batch) {
+					write.future.completeExceptionally(e.getCause());
+				}
+				return;
+			} catch (SQLException | RuntimeException e) {
+				System.out.println("批量写入失败，改为逐行执行：" + e.getMessage());
+				fallbackCount.incrementAndGet();
+				for (Write write : batch) {
+					executeOne(cnn, write);
+				}
+				return;
+			}
+		} finally {
+			cnn.close();
+		}
+		batchCount.incrementAndGet();
+		writeCount.addAndGet(batch.size());
+		for (String sql : groups.keySet()) {
+			invalidateCache(sql);
+		}
+		int g = 0;
+		for (List<Write> group : groups.values()) {
+			for (int i = 0; i < group.size(); i++) {
+				int count = i < counts[g].length ? counts[g][i] : Statement.SUCCESS_NO_INFO;
+				group.get(i).future.complete(count);
+			}
+			g++;
+		}
+	}
+
+	/**
+	 * @desc invalidateCache(写入提交后使缓存失效，出错只打印，写入本身已经成功)
+	 * @param sql
+	 * @author taylor
+	 */
+	private void invalidateCache(String sql) {
+		QueryCache cache = queryCache;
+		if (cache == null) {
+			return;
+		}
+		try {
+			cache.onWrite(sql);
+		} catch (RuntimeException e) {
+			System.out.println("写入后缓存失效失败：" + sql);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @desc executeInTransaction(执行各组批量并提交；提交失败时抛出CommitException，其cause为提交的异常)
+	 * @author taylor
+	 */
+	private int[][] executeInTransaction(PooledConnection cnn, Map<String, List<Write>> groups) throws SQLException {
+		Connection connection = cnn.getConnection();
+		boolean autoCommit = connection.getAutoCommit();
+		if (autoCommit) {
+			connection.setAutoCommit(false);
+		}
+		int[][] counts = new int[groups.size()][];
+		try {
+			int g = 0;
+			for (Map.Entry<String, List<Write>> group : groups.entrySet()) {
+				counts[g++] = executeBatch(cnn, group.getKey(), group.getValue());
+			}
+			try {
+				connection.commit();
+			} catch (SQLException | RuntimeException e) {
+				throw new CommitException(e);
+			}
+		} catch (SQLException | RuntimeException e) {
+			try {
+				connection.rollback();
+			} catch (SQLException rollbackFailure) {
+				e.addSuppressed(rollbackFailure);
+			}
+			if (autoCommit) {
+				try {
+					connection.setAutoCommit(true);
+				} catch (SQLException restoreFailure) {
+					e.addSuppressed(restoreFailure);
+				}
+			}
+			throw e;
+		}
+		/**
+		 * 已提交，恢复autoCommit失败不能当作写入失败；连接状态不确定，归还后由连接池关闭
+		 */
+		if (autoCommit) {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				System.out.println("恢复autoCommit失败：" + e.getMessage());
+				cnn.markEvicted();
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * 开启语句缓存时复用缓存的语句，不关闭它，只清空批量
+	 */
+	private int[] executeBatch(PooledConnection cnn, String sql, List<Write> writes) throws SQLException {
+		boolean cached = cnn.getMyPool().getStatementCacheSize() > 0;
+		PreparedStatement statement = cached ? cnn.prepare(sql) : cnn.getConnection().prepareStatement(sql);
+		try {
+			for (Write write : writes) {
+				bind(statement, write.params);
+				statement.addBatch();
+			}
+			return statement.executeBatch();
+		} finally {
+			if (cached) {
+				statement.clearBatch();
+			} else {
+				statement.close();
+			}
+		}
+	}
+
+	/**
+	 * 逐行执行时每行单独提交
+	 */
+	private void executeOne(PooledConnection cnn, Write write) {
+		Connection connection = cnn.getConnection();
+		int count;
+		try {
+			boolean cached = cnn.getMyPool().getStatementCacheSize() > 0;
+			PreparedStatement statement = cached ? cnn.prepare(write.sql) : connection.prepareStatement(write.sql);
+			try {
+				bind(statement, write.params);
+				count = statement.executeUpdate();
+				if (!connection.getAutoCommit()) {
+					connection.commit();
+				}
+			} finally {
+				if (!cached) {
+					statement.close();
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			try {
+				if (!connection.getAutoCommit()) {
+					connection.rollback();
+				}
+			} catch (SQLException rollbackFailure) {
+				e.addSuppressed(rollbackFailure);
+			}
+			write.future.completeExceptionally(e);
+			return;
+		}
+		writeCount.incrementAndGet();
+		invalidateCache(write.sql);
+		write.future.complete(count);
+	}
+
+	private static void bind(PreparedStatement statement, Object[] params) throws SQLException {
+		if (params == null) {
+			return;
+		}
+		for (int i = 0; i < params.length; i++) {
+			statement.setObject(i + 1, params[i]);
+		}
+	}
+
+	/**
+	 * @ClassName: Write
+	 * @Function: 一行待执行的写入
+	 */
+	private static class Write {
+
+		private final String sql;
+
+		private final Object[] params;
+
+		private final long submittedAt = System.nanoTime();
+
+		private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+		Write(String sql, Object[] params) {
+			this.sql = sql;
+			this.params = params == null ? null : params.clone();
+		}
+	}
+
+	/**
+	 * @ClassName: CommitException
+	 * @Function: 批量已执行、提交失败，事务是否生效不确定
+	 */
+	private static class CommitException extends SQLException {
+
+		private static final long serialVersionUID = 1L;
+
+		CommitException(Exception cause) {
+			super(cause.getMessage(), cause);
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.taylor;
+
+/**
+ * @ClassName: ConnectionTimeoutException
+ * @Function: 在等待时间内未能获取到连接
+ * @author Taylor
+ */
+public class ConnectionTimeoutException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ConnectionTimeoutException(String message) {
+		super(message);
+	}
+
+}
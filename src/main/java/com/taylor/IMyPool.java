@@ -1,21 +1,52 @@
-package com.taylor;
-
-public interface IMyPool {
-
-  /**
-   * @desc   getConnection(获取连接对象)
-   * @author taylor
-   * @date  2016年11月25日 上午1:04:28
-   */
-  public PooledConnection getConnection();
-
-  /**
-   * 
-   * @desc createNewConnection(这里用一句话描述这个方法的作用)
-   * @param count
-   * @author taylor
-   * @date 2016年11月25日 上午1:04:17
-   */
-  public void createNewConnections(int count);
-
-}
+package com.taylor;
+
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+public interface IMyPool {
+
+  /**
+   * @desc   getConnection(获取连接对象)
+   * @author taylor
+   * @date  2016年11月25日 上午1:04:28
+   */
+  public PooledConnection getConnection();
+
+  /**
+   * @desc   getConnection(获取连接对象，池满时最多等待timeout，超时抛出ConnectionTimeoutException)
+   * @param timeout
+   * @param unit
+   * @author taylor
+   */
+  public PooledConnection getConnection(long timeout, TimeUnit unit);
+
+  /**
+   * @desc   getJdbcConnection(获取标准JDBC连接，调用其close()即归还连接池，可直接交给现有JDBC代码使用)
+   * @author taylor
+   */
+  public Connection getJdbcConnection();
+
+  /**
+   * @desc   getJdbcConnection(获取标准JDBC连接，池满时最多等待timeout)
+   * @param timeout
+   * @param unit
+   * @author taylor
+   */
+  public Connection getJdbcConnection(long timeout, TimeUnit unit);
+
+  /**
+   * 
+   * @desc createNewConnection(这里用一句话描述这个方法的作用)
+   * @param count
+   * @author taylor
+   * @date 2016年11月25日 上午1:04:17
+   */
+  public void createNewConnections(int count);
+
+  /**
+   * @desc shutdown(关闭连接池)
+   * @author taylor
+   */
+  public void shutdown();
+
+}
@@ -1,163 +1,1144 @@
-package com.taylor;
-
-import java.io.IOException;
-import java.sql.Connection;
-import java.sql.Driver;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.util.Properties;
-import java.util.Vector;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import lombok.Data;
-
-/**
- * @ClassName: MyPool
- * @Function: 数据库连接池
- * @date: 2016年11月25日 上午1:08:23
- * @author Taylor
- */
-@Data
-public class MyPool implements IMyPool {
-
-	private String jdbcDriver;
-
-	private String username;
-
-	private String password;
-
-	private String jdbcUrl;
-
-	private int initCount;
-
-	private int stepSize;
-
-	private int poolMaxSize;
-
-	private int poolMaxIdle;
-
-	public  AtomicInteger currentIdleCount = new AtomicInteger(0);
-
-	public  AtomicInteger busyCount = new AtomicInteger(0);
-
-	private Vector<PooledConnection> poolConnections = new Vector<>();
-
-	public MyPool() {
-		initContext();
-	}
-
-	private void initContext() {
-		Properties properties = new Properties();
-		try {
-			properties.load(this.getClass().getClassLoader().getResourceAsStream("config/jdbc.properties"));
-		} catch (IOException e1) {
-			System.out.println("jdbcp.properties解析错误，不存在");
-			e1.printStackTrace();
-		}
-		this.jdbcDriver = properties.getProperty("jdbc.driver");
-		this.username = properties.getProperty("jdbc.username");
-		this.password = properties.getProperty("jdbc.password");
-		this.jdbcUrl = properties.getProperty("jdbc.url");
-		this.initCount = Integer.valueOf(properties.getProperty("jdbc.initSize"));
-		this.stepSize = Integer.valueOf(properties.getProperty("jdbc.stepSize"));
-		this.poolMaxSize = Integer.valueOf(properties.getProperty("jdbc.maxSize"));
-		this.poolMaxIdle = Integer.valueOf(properties.getProperty("jdbc.maxIdle"));
-
-		Driver driver;
-		try {
-			driver = (Driver) Class.forName(jdbcDriver).newInstance();
-			DriverManager.registerDriver(driver);
-		} catch (SQLException | InstantiationException | IllegalAccessException | ClassNotFoundException e) {
-			System.out.println("数据库初始化失败");
-			e.printStackTrace();
-		}
-		this.createNewConnections(initCount);
-	}
-
-	@Override
-	public PooledConnection getConnection() {
-		if (poolConnections.size() <= 0) {
-			System.out.println("连接池中没有可用的连接");
-			throw new RuntimeException("连接池中没有可用的连接");
-		}
-		return getRealConnection();
-	}
-
-	/**
-	 * @desc getRealConnection(获取可用的连接)
-	 * @author taylor
-	 * @date 2016年11月25日 上午1:24:15
-	 */
-	private synchronized PooledConnection getRealConnection() {
-		/**
-		 * 获取连接
-		 */
-		for (PooledConnection cnn : poolConnections) {
-			if (!cnn.isBusy()) {
-				Connection connection = cnn.getConnection();
-				try {
-					if (connection != null && !connection.isValid(2000)) {
-						poolConnections.remove(cnn);
-						this.createNewConnections(1);
-						continue;
-					}
-				} catch (SQLException e) {
-					e.printStackTrace();
-				}
-				cnn.setBusy(true);
-				busyCount.incrementAndGet();
-				currentIdleCount.decrementAndGet();
-				return cnn;
-			}
-		}
-		/**
-		 * 超过线程数则等待
-		 */
-		if (poolConnections.size() >= poolMaxSize) {
-			try {
-				System.out.println("呜呜。。。池中已经没有连接了，先睡1秒。。。。");
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		} else {
-			this.createNewConnections(stepSize);
-
-		}
-		return getRealConnection();
-	}
-
-	/**
-	 * @desc createNewConnections(创建连接)
-	 * @param count
-	 * @author taylor
-	 * @date 2016年11月25日 上午1:06:12
-	 */
-	@Override
-	public void createNewConnections(int count) {
-		synchronized (this) {
-			if (this.poolMaxSize > 0 && (poolConnections.size() + count) > this.poolMaxSize) {
-				System.out.println("创建连接池数超过上限");
-				try {
-					Thread.sleep(2000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-				return;
-			}
-			for (int i = 0; i < count; i++) {
-				currentIdleCount.incrementAndGet();
-				try {
-					Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
-					PooledConnection myConnection = new PooledConnection(false, connection, this);
-					poolConnections.add(myConnection);
-				} catch (SQLException e) {
-					System.out.println("获取数据库连接失败");
-					e.printStackTrace();
-				}
-
-			}
-		}
-
-	}
-}
+package com.taylor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.taylor.metrics.DefaultMetricsRegistry;
+import com.taylor.metrics.MetricsRegistry;
+import com.taylor.metrics.MetricsTracker;
+import com.taylor.metrics.NoopMetricsTracker;
+import com.taylor.metrics.PoolStats;
+
+
+/**
+ * @ClassName: MyPool
+ * @Function: 数据库连接池
+ * @date: 2016年11月25日 上午1:08:23
+ * @author Taylor
+ */
+public class MyPool implements IMyPool, PoolStats, MyPoolMXBean {
+
+	/**
+	 * 未命名的连接池按此编号命名为MyPool-N
+	 */
+	private static final AtomicInteger POOL_SEQUENCE = new AtomicInteger();
+
+	/**
+	 * 连接池名称，用于区分同一JVM中的多个连接池及其后台线程和MBean
+	 */
+	private String poolName;
+
+	private String jdbcDriver;
+
+	private String username;
+
+	private String password;
+
+	private String jdbcUrl;
+
+	private int initCount;
+
+	private int stepSize;
+
+	private volatile int poolMaxSize;
+
+	private volatile int poolMaxIdle;
+
+	/**
+	 * 后台预先保持的最少空闲连接数
+	 */
+	private volatile int minIdle;
+
+	/**
+	 * 后台并行创建连接的线程数
+	 */
+	private int createThreads;
+
+	/**
+	 * 获取连接的默认等待时间(毫秒)
+	 */
+	private volatile long connectionTimeout;
+
+	/**
+	 * 连接在此时间(毫秒)内使用过或校验过则借出时不再校验
+	 */
+	private long validationWindow;
+
+	/**
+	 * 校验连接的超时时间(毫秒)
+	 */
+	private long validationTimeout;
+
+	/**
+	 * 校验连接时执行的测试语句，为空则使用Connection.isValid()
+	 */
+	private String testQuery;
+
+	/**
+	 * 后台维护任务的执行间隔(毫秒)
+	 */
+	private long housekeepingPeriod;
+
+	/**
+	 * 空闲超过此时间(毫秒)的连接被回收，保留minIdle个，0表示不回收
+	 */
+	private long idleTimeout;
+
+	/**
+	 * 连接最长存活时间(毫秒)，到期后退役重建，0表示不限
+	 */
+	private long maxLifetime;
+
+	/**
+	 * 空闲连接超过此时间(毫秒)未使用也未校验则由后台发送保活校验，默认2分钟，应远大于housekeepingPeriod、小于数据库和网络设备的空闲断开时间；0表示不保活
+	 */
+	private long keepaliveTime;
+
+	/**
+	 * 连接借出超过此时间(毫秒)未归还视为泄漏，0表示不检测
+	 */
+	private volatile long leakDetectionThreshold;
+
+	/**
+	 * 每N次借出采集一次借出位置的调用栈，1表示每次都采集
+	 */
+	private int leakDetectionSampleRate;
+
+	/**
+	 * 检测到泄漏后是否强制回收连接
+	 */
+	private boolean leakReclaim;
+
+	/**
+	 * 每个连接缓存的PreparedStatement数量，0表示不缓存
+	 */
+	private int statementCacheSize;
+
+	/**
+	 * 是否在构造时同步建立initCount个连接，否则由后台异步建立
+	 */
+	private boolean eagerFill;
+
+	/**
+	 * 流式查询(PooledConnection.stream)每次从数据库读取的行数；MySQL需在URL中加useCursorFetch=true才按此分批，
+	 * 或设为Integer.MIN_VALUE逐行读取
+	 */
+	private int streamFetchSize;
+
+	public  AtomicInteger currentIdleCount = new AtomicInteger(0);
+
+	public  AtomicInteger busyCount = new AtomicInteger(0);
+
+	/**
+	 * 池中全部连接
+	 */
+	private CopyOnWriteArrayList<PooledConnection> poolConnections = new CopyOnWriteArrayList<>();
+
+	/**
+	 * 空闲连接队列，借出时直接出队，无需遍历全部连接
+	 */
+	private ConcurrentLinkedQueue<PooledConnection> idleConnections = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 每个线程最近归还的连接，再次借用时优先取回同一个连接
+	 */
+	private final ThreadLocal<WeakReference<PooledConnection>> lastReturned = new ThreadLocal<>();
+
+	/**
+	 * 虚拟线程的类(JDK 21+，低版本为null)，虚拟线程一个任务一个，不做线程亲和，避免每个线程各建一份ThreadLocal
+	 */
+	private static final Class<?> VIRTUAL_THREAD_CLASS = findClass("java.lang.VirtualThread");
+
+	/**
+	 * 等待连接的线程通过公平队列直接接收归还的连接，先等待的先拿到
+	 */
+	private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<>(true);
+
+	/**
+	 * 空闲队列中取不到连接、正在等待移交的线程数
+	 */
+	private final AtomicInteger waiters = new AtomicInteger(0);
+
+	/**
+	 * 此刻阻塞在handoffQueue.poll()上的线程数，只用于判断取回本线程上次归还的连接是否插队
+	 */
+	private final AtomicInteger parkedWaiters = new AtomicInteger(0);
+
+	/**
+	 * 等待线程每隔这么久醒来一次，重新查看空闲队列并检查连接池是否已关闭
+	 */
+	private static final long HANDOFF_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * 有线程等待但还没进入移交队列时，归还线程最多等它这么久，之后把连接放入空闲队列
+	 */
+	private static final long HANDOFF_OFFER_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * 已有连接数加上正在创建的连接数，用于无锁地控制不超过poolMaxSize
+	 */
+	private final AtomicInteger totalConnections = new AtomicInteger(0);
+
+	/**
+	 * 正在后台创建的连接数
+	 */
+	private final AtomicInteger pendingCreates = new AtomicInteger(0);
+
+	/**
+	 * 后台创建连接的线程池，建立连接不占用借用线程
+	 */
+	private ThreadPoolExecutor connectionCreator;
+
+	/**
+	 * 后台维护线程
+	 */
+	private ScheduledExecutorService houseKeeper;
+
+	/**
+	 * 后台关闭物理连接的线程池，关闭连接不占用请求线程
+	 */
+	private ThreadPoolExecutor connectionCloser;
+
+	private volatile boolean shutdown;
+
+	/**
+	 * 指标记录器，默认不记录，通过setMetricsRegistry()或jdbc.metricsEnabled开启
+	 */
+	private volatile MetricsTracker metricsTracker = NoopMetricsTracker.INSTANCE;
+
+	/**
+	 * 已注册的JMX名称，未注册时为null
+	 */
+	private ObjectName mbeanName;
+
+	/**
+	 * 从classpath下的config/jdbc.properties加载配置
+	 */
+	public MyPool() {
+		this(loadProperties());
+	}
+
+	/**
+	 * @param properties
+	 *            与config/jdbc.properties相同的jdbc.*配置项
+	 */
+	public MyPool(Properties properties) {
+		try {
+			initContext(properties);
+		} catch (RuntimeException | Error e) {
+			/**
+			 * 初始化失败时停掉已启动的后台线程、关闭已建立的连接并注销MBean，不留下半初始化的连接池
+			 */
+			shutdown();
+			throw e;
+		}
+	}
+
+	static Properties loadProperties() {
+		Properties properties = new Properties();
+		try {
+			properties.load(MyPool.class.getClassLoader().getResourceAsStream("config/jdbc.properties"));
+		} catch (IOException e1) {
+			System.out.println("jdbcp.properties解析错误，不存在");
+			e1.printStackTrace();
+		}
+		return properties;
+	}
+
+	private void initContext(Properties properties) {
+		String name = properties.getProperty("jdbc.poolName");
+		this.poolName = name != null ? name : "MyPool-" + POOL_SEQUENCE.incrementAndGet();
+		this.jdbcDriver = properties.getProperty("jdbc.driver");
+		this.username = properties.getProperty("jdbc.username");
+		this.password = properties.getProperty("jdbc.password");
+		this.jdbcUrl = properties.getProperty("jdbc.url");
+		this.initCount = Integer.valueOf(properties.getProperty("jdbc.initSize", "0"));
+		this.stepSize = Integer.valueOf(properties.getProperty("jdbc.stepSize", "5"));
+		this.poolMaxSize = Integer.valueOf(properties.getProperty("jdbc.maxSize", "10"));
+		this.poolMaxIdle = Integer.valueOf(properties.getProperty("jdbc.maxIdle", "10"));
+		this.minIdle = Integer.valueOf(properties.getProperty("jdbc.minIdle", "0"));
+		this.createThreads = Integer.valueOf(properties.getProperty("jdbc.createThreads", "1"));
+		this.connectionTimeout = Long.valueOf(properties.getProperty("jdbc.connectionTimeout", "30000"));
+		this.validationWindow = Long.valueOf(properties.getProperty("jdbc.validationWindow", "5000"));
+		this.validationTimeout = Long.valueOf(properties.getProperty("jdbc.validationTimeout", "2000"));
+		this.testQuery = properties.getProperty("jdbc.testQuery");
+		this.housekeepingPeriod = Long.valueOf(properties.getProperty("jdbc.housekeepingPeriod", "2000"));
+		this.idleTimeout = Long.valueOf(properties.getProperty("jdbc.idleTimeout", "600000"));
+		this.maxLifetime = Long.valueOf(properties.getProperty("jdbc.maxLifetime", "1800000"));
+		this.keepaliveTime = Long.valueOf(properties.getProperty("jdbc.keepaliveTime", "120000"));
+		this.leakDetectionThreshold = Long.valueOf(properties.getProperty("jdbc.leakDetectionThreshold", "0"));
+		this.leakDetectionSampleRate = Math.max(1,
+				Integer.valueOf(properties.getProperty("jdbc.leakDetectionSampleRate", "1")));
+		this.leakReclaim = Boolean.valueOf(properties.getProperty("jdbc.leakReclaim", "false"));
+		this.statementCacheSize = Integer.valueOf(properties.getProperty("jdbc.statementCacheSize", "0"));
+		this.eagerFill = Boolean.valueOf(properties.getProperty("jdbc.eagerFill", "false"));
+		this.streamFetchSize = Integer.valueOf(properties.getProperty("jdbc.streamFetchSize", "1000"));
+		if (Boolean.valueOf(properties.getProperty("jdbc.metricsEnabled", "false"))) {
+			setMetricsRegistry(new DefaultMetricsRegistry());
+		}
+		boolean registerMbeans = Boolean.valueOf(properties.getProperty("jdbc.registerMbeans", "false"));
+
+		/**
+		 * 未配置驱动类时由DriverManager自动发现
+		 */
+		if (jdbcDriver != null) {
+			Driver driver;
+			try {
+				driver = (Driver) Class.forName(jdbcDriver).newInstance();
+				DriverManager.registerDriver(driver);
+			} catch (SQLException | InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+				System.out.println("数据库初始化失败");
+				e.printStackTrace();
+			}
+		}
+
+		this.connectionCreator = new ThreadPoolExecutor(createThreads, createThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger sequence = new AtomicInteger(1);
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, poolName + "-Creator-" + sequence.getAndIncrement());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.connectionCreator.allowCoreThreadTimeOut(true);
+		this.connectionCloser = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, poolName + "-Closer");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.connectionCloser.allowCoreThreadTimeOut(true);
+		this.houseKeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, poolName + "-HouseKeeper");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.houseKeeper.scheduleWithFixedDelay(new HouseKeeper(), housekeepingPeriod, housekeepingPeriod,
+				TimeUnit.MILLISECONDS);
+
+		/**
+		 * eagerFill时初始连接同步建立，否则交给后台线程，其余由后台补足到minIdle
+		 */
+		if (eagerFill) {
+			for (int i = 0; i < initCount && reserveConnectionSlot(); i++) {
+				PooledConnection cnn = addConnection();
+				if (cnn != null) {
+					offerIdleConnection(cnn);
+				}
+			}
+		} else {
+			createNewConnections(initCount);
+		}
+		fillPool();
+
+		/**
+		 * 全部初始化完成后才注册MBean，JMX客户端看不到未初始化完的连接池
+		 */
+		if (registerMbeans) {
+			registerMBean();
+		}
+	}
+
+	/**
+	 * @desc stream(借一个连接执行流式查询，逐行回调handler，结束或出错后归还连接，见PooledConnection.stream())
+	 * @param sql
+	 * @param params
+	 *            按顺序绑定到SQL中的?，可为null
+	 * @param handler
+	 * @return 处理的行数
+	 * @author taylor
+	 */
+	public long stream(String sql, Object[] params, RowHandler handler) throws SQLException {
+		PooledConnection cnn = getConnection();
+		try {
+			return cnn.stream(sql, params, handler);
+		} finally {
+			cnn.close();
+		}
+	}
+
+	/**
+	 * @desc streamRows(借一个连接执行流式查询，返回惰性的Stream；读完最后一行或Stream被close()时归还连接，
+	 *       提前结束遍历时必须close()，见PooledConnection.streamRows())
+	 * @param sql
+	 * @param params
+	 * @author taylor
+	 */
+	public Stream<Row> streamRows(String sql, Object... params) throws SQLException {
+		PooledConnection cnn = getConnection();
+		try {
+			return cnn.openStream(sql, params, true);
+		} catch (SQLException | RuntimeException e) {
+			cnn.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public PooledConnection getConnection() {
+		return getConnection(connectionTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public PooledConnection getConnection(long timeout, TimeUnit unit) {
+		if (shutdown) {
+			throw new IllegalStateException("连接池已关闭");
+		}
+		long start = System.nanoTime();
+		PooledConnection cnn = getRealConnection(unit.toNanos(timeout));
+		metricsTracker.recordBorrowWait(System.nanoTime() - start);
+		return cnn;
+	}
+
+	/**
+	 * @desc setMetricsRegistry(向指标注册中心登记本连接池，之后的借出、归还等事件记录到其返回的MetricsTracker)
+	 * @param registry
+	 * @author taylor
+	 */
+	public void setMetricsRegistry(MetricsRegistry registry) {
+		this.metricsTracker = registry == null ? NoopMetricsTracker.INSTANCE : registry.createTracker(poolName, this);
+	}
+
+	@Override
+	public void setPoolMaxSize(int poolMaxSize) {
+		this.poolMaxSize = poolMaxSize;
+		fillPool();
+	}
+
+	@Override
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+		fillPool();
+	}
+
+	/**
+	 * @desc registerMBean(以com.taylor:type=MyPool,name=连接池名称注册到平台MBeanServer)
+	 * @author taylor
+	 */
+	public synchronized void registerMBean() {
+		if (mbeanName != null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName("com.taylor:type=MyPool,name=" + ObjectName.quote(poolName));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			mbeanName = name;
+		} catch (JMException e) {
+			System.out.println("注册连接池MBean失败");
+			e.printStackTrace();
+		}
+	}
+
+	public synchronized void unregisterMBean() {
+		if (mbeanName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+		} catch (JMException e) {
+			System.out.println("注销连接池MBean失败");
+			e.printStackTrace();
+		}
+		mbeanName = null;
+	}
+
+	@Override
+	public int getTotalConnections() {
+		return poolConnections.size();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		return currentIdleCount.get();
+	}
+
+	@Override
+	public int getActiveConnections() {
+		return busyCount.get();
+	}
+
+	@Override
+	public int getThreadsAwaitingConnection() {
+		return waiters.get();
+	}
+
+	@Override
+	public String getPoolName() {
+		return poolName;
+	}
+
+	public String getJdbcDriver() {
+		return jdbcDriver;
+	}
+
+	public String getJdbcUrl() {
+		return jdbcUrl;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public int getInitCount() {
+		return initCount;
+	}
+
+	public int getStepSize() {
+		return stepSize;
+	}
+
+	@Override
+	public int getPoolMaxSize() {
+		return poolMaxSize;
+	}
+
+	@Override
+	public int getPoolMaxIdle() {
+		return poolMaxIdle;
+	}
+
+	@Override
+	public void setPoolMaxIdle(int poolMaxIdle) {
+		this.poolMaxIdle = poolMaxIdle;
+	}
+
+	@Override
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	public int getCreateThreads() {
+		return createThreads;
+	}
+
+	public long getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * @desc setConnectionTimeout(运行时可调整，对之后的getConnection()生效)
+	 * @author taylor
+	 */
+	public void setConnectionTimeout(long connectionTimeout) {
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	public long getValidationWindow() {
+		return validationWindow;
+	}
+
+	public long getValidationTimeout() {
+		return validationTimeout;
+	}
+
+	public String getTestQuery() {
+		return testQuery;
+	}
+
+	public long getHousekeepingPeriod() {
+		return housekeepingPeriod;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public long getMaxLifetime() {
+		return maxLifetime;
+	}
+
+	public long getKeepaliveTime() {
+		return keepaliveTime;
+	}
+
+	public long getLeakDetectionThreshold() {
+		return leakDetectionThreshold;
+	}
+
+	/**
+	 * @desc setLeakDetectionThreshold(运行时可调整，0表示关闭泄漏检测)
+	 * @author taylor
+	 */
+	public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+		this.leakDetectionThreshold = leakDetectionThreshold;
+	}
+
+	public int getLeakDetectionSampleRate() {
+		return leakDetectionSampleRate;
+	}
+
+	public boolean isLeakReclaim() {
+		return leakReclaim;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public boolean isEagerFill() {
+		return eagerFill;
+	}
+
+	public int getStreamFetchSize() {
+		return streamFetchSize;
+	}
+
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * 不含密码
+	 */
+	@Override
+	public String toString() {
+		return "MyPool[" + poolName + ", " + jdbcUrl + ", total=" + getTotalConnections() + ", idle="
+				+ getIdleConnections() + ", active=" + getActiveConnections() + "]";
+	}
+
+	@Override
+	public Connection getJdbcConnection() {
+		return new ProxyConnection(getConnection());
+	}
+
+	@Override
+	public Connection getJdbcConnection(long timeout, TimeUnit unit) {
+		return new ProxyConnection(getConnection(timeout, unit));
+	}
+
+	/**
+	 * @desc getRealConnection(获取可用的连接)
+	 * @param timeoutNanos
+	 *            最长等待时间
+	 * @author taylor
+	 * @date 2016年11月25日 上午1:24:15
+	 */
+	private PooledConnection getRealConnection(long timeoutNanos) {
+		/**
+		 * 优先取回本线程上次归还的连接，若已被其他线程借走则CAS失败；
+		 * 只在有线程阻塞等待移交时让出，其他线程同时借用(空闲队列中还有连接)不影响
+		 */
+		WeakReference<PooledConnection> ref = isVirtualThread() ? null : lastReturned.get();
+		if (ref != null && parkedWaiters.get() == 0) {
+			PooledConnection cnn = ref.get();
+			if (cnn != null && cnn.compareAndSetState(PooledConnection.STATE_IDLE, PooledConnection.STATE_IN_USE)
+					&& checkOut(cnn)) {
+				return cnn;
+			}
+		}
+		long deadline = System.nanoTime() + timeoutNanos;
+		PooledConnection cnn = pollIdleConnection();
+		if (cnn != null) {
+			return cnn;
+		}
+		/**
+		 * 空闲队列取不到才算等待线程，马上能拿到连接的借用线程不触发扩容，也不让归还线程等它
+		 */
+		waiters.incrementAndGet();
+		try {
+			while (true) {
+				if (shutdown) {
+					throw new IllegalStateException("连接池已关闭");
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					break;
+				}
+				/**
+				 * 通知后台补充连接，然后排队等待归还或新建的连接；每次只等一小段，
+				 * 错过移交而进了空闲队列的连接下一轮取到，连接池关闭时也能尽快退出
+				 */
+				fillPool();
+				parkedWaiters.incrementAndGet();
+				try {
+					cnn = handoffQueue.poll(Math.min(remaining, HANDOFF_RECHECK_NANOS), TimeUnit.NANOSECONDS);
+				} finally {
+					parkedWaiters.decrementAndGet();
+				}
+				if (cnn != null && cnn.compareAndSetState(PooledConnection.STATE_IDLE, PooledConnection.STATE_IN_USE)
+						&& checkOut(cnn)) {
+					return cnn;
+				}
+				cnn = pollIdleConnection();
+				if (cnn != null) {
+					return cnn;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("等待连接时线程被中断", e);
+		} finally {
+			waiters.decrementAndGet();
+		}
+		metricsTracker.recordTimeout();
+		throw new ConnectionTimeoutException("获取连接超时，等待" + TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+				+ "毫秒，当前总连接数：" + poolConnections.size() + "，等待线程数：" + waiters.get());
+	}
+
+	/**
+	 * @desc pollIdleConnection(从空闲队列获取连接，CAS抢占成功才算借出)
+	 * @author taylor
+	 */
+	private PooledConnection pollIdleConnection() {
+		PooledConnection cnn;
+		while ((cnn = idleConnections.poll()) != null) {
+			cnn.clearQueued();
+			if (cnn.compareAndSetState(PooledConnection.STATE_IDLE, PooledConnection.STATE_IN_USE)
+					&& checkOut(cnn)) {
+				return cnn;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @desc checkOut(完成借出：校验已抢占的连接并更新计数，连接失效时移除并返回false，由借用循环补充新连接)
+	 * @param cnn
+	 * @author taylor
+	 */
+	private boolean checkOut(PooledConnection cnn) {
+		if (currentIdleCount.decrementAndGet() < minIdle) {
+			fillPool();
+		}
+		/**
+		 * 近期使用过或被后台校验过的连接直接借出，省去一次网络往返
+		 */
+		if (System.currentTimeMillis() - cnn.getLastAlive() > validationWindow) {
+			if (!isConnectionAlive(cnn.getConnection())) {
+				removeConnection(cnn);
+				return false;
+			}
+			cnn.markValidated();
+		}
+		if (leakDetectionThreshold > 0) {
+			cnn.markBorrowed(leakDetectionSampleRate == 1
+					|| ThreadLocalRandom.current().nextInt(leakDetectionSampleRate) == 0);
+		} else if (cnn.getBorrowedAt() != 0) {
+			/**
+			 * 检测关闭期间的借出不留下上一次借出的时间，之后在运行时开启检测也不会被误报
+			 */
+			cnn.clearBorrowed();
+		}
+		cnn.markCheckedOut();
+		busyCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @desc isConnectionAlive(校验连接是否可用，配置了testQuery时执行测试语句)
+	 * @param connection
+	 * @author taylor
+	 */
+	private boolean isConnectionAlive(Connection connection) {
+		if (connection == null) {
+			return false;
+		}
+		int timeoutSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(validationTimeout));
+		try {
+			if (testQuery == null) {
+				return connection.isValid(timeoutSeconds);
+			}
+			Statement statement = connection.createStatement();
+			try {
+				statement.setQueryTimeout(timeoutSeconds);
+				statement.execute(testQuery);
+			} finally {
+				statement.close();
+			}
+			return true;
+		} catch (SQLException e) {
+			System.out.println("连接校验失败：" + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * @desc releaseConnection(归还连接，由PooledConnection.close()调用)
+	 * @param cnn
+	 * @author taylor
+	 */
+	void releaseConnection(PooledConnection cnn) {
+		/**
+		 * 连接池已关闭或连接已到期，退役归还的连接；多余的空闲连接由后台维护线程回收
+		 */
+		if ((shutdown || cnn.isEvicted())
+				&& cnn.compareAndSetState(PooledConnection.STATE_IN_USE, PooledConnection.STATE_REMOVED)) {
+			metricsTracker.recordUsage(System.nanoTime() - cnn.getCheckedOutAt());
+			busyCount.decrementAndGet();
+			retireConnection(cnn);
+			fillPool();
+			return;
+		}
+		/**
+		 * 重复关闭或已被移除的连接不再入队
+		 */
+		if (!cnn.compareAndSetState(PooledConnection.STATE_IN_USE, PooledConnection.STATE_IDLE)) {
+			return;
+		}
+		metricsTracker.recordUsage(System.nanoTime() - cnn.getCheckedOutAt());
+		cnn.touch();
+		busyCount.decrementAndGet();
+		currentIdleCount.incrementAndGet();
+		if (!isVirtualThread()) {
+			WeakReference<PooledConnection> ref = lastReturned.get();
+			if (ref == null || ref.get() != cnn) {
+				lastReturned.set(new WeakReference<>(cnn));
+			}
+		}
+		offerIdleConnection(cnn);
+	}
+
+	private static boolean isVirtualThread() {
+		return VIRTUAL_THREAD_CLASS != null && VIRTUAL_THREAD_CLASS.isInstance(Thread.currentThread());
+	}
+
+	private static Class<?> findClass(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @desc offerIdleConnection(空闲连接入队，有线程等待时直接交给等待最久的线程)
+	 * @param cnn
+	 * @author taylor
+	 */
+	private void offerIdleConnection(PooledConnection cnn) {
+		/**
+		 * 有线程等待时先移交，避免新来的借用线程从队列插队；等待线程可能还没进入移交队列，
+		 * 只短暂等它一次，仍没人接就放入空闲队列，由等待线程下一轮取走
+		 */
+		if (waiters.get() > 0) {
+			if (cnn.getState() != PooledConnection.STATE_IDLE) {
+				return;
+			}
+			try {
+				if (handoffQueue.offer(cnn) || handoffQueue.offer(cnn, HANDOFF_OFFER_NANOS, TimeUnit.NANOSECONDS)) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		/**
+		 * 被本线程直接取回的连接仍留在队列中，已在队列中的不重复入队
+		 */
+		if (cnn.markQueued()) {
+			idleConnections.offer(cnn);
+		}
+	}
+
+	/**
+	 * @desc removeConnection(将已借出的连接从池中移除并关闭)
+	 * @param cnn
+	 * @author taylor
+	 */
+	private void removeConnection(PooledConnection cnn) {
+		if (cnn.compareAndSetState(PooledConnection.STATE_IN_USE, PooledConnection.STATE_REMOVED)) {
+			retireConnection(cnn);
+		}
+	}
+
+	/**
+	 * @desc retireConnection(将已置为STATE_REMOVED的连接移出连接池，物理关闭交给后台线程)
+	 * @param cnn
+	 * @author taylor
+	 */
+	private void retireConnection(final PooledConnection cnn) {
+		poolConnections.remove(cnn);
+		totalConnections.decrementAndGet();
+		if (!shutdown) {
+			metricsTracker.recordEviction();
+			try {
+				connectionCloser.execute(new Runnable() {
+					@Override
+					public void run() {
+						closeConnection(cnn);
+					}
+				});
+				return;
+			} catch (RejectedExecutionException e) {
+				// 连接池正在关闭，直接关闭
+			}
+		}
+		closeConnection(cnn);
+	}
+
+	private void closeConnection(PooledConnection cnn) {
+		cnn.closeStatements();
+		Connection connection = cnn.getConnection();
+		if (connection != null) {
+			try {
+				if (!connection.isClosed()) {
+					connection.close();
+				}
+			} catch (SQLException e) {
+				System.out.println("关闭连接失败");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @desc createNewConnections(异步创建连接，创建完成后立即交给等待的线程)
+	 * @param count
+	 * @author taylor
+	 * @date 2016年11月25日 上午1:06:12
+	 */
+	@Override
+	public void createNewConnections(int count) {
+		for (int i = 0; i < count; i++) {
+			if (!reserveConnectionSlot()) {
+				System.out.println("创建连接池数超过上限");
+				return;
+			}
+			submitCreator();
+		}
+	}
+
+	/**
+	 * @desc fillPool(补足空闲连接到minIdle，有线程等待时按stepSize扩容)
+	 * @author taylor
+	 */
+	private void fillPool() {
+		if (shutdown) {
+			return;
+		}
+		int waiting = waiters.get();
+		int wanted = Math.max(minIdle - currentIdleCount.get(), waiting > 0 ? Math.max(waiting, stepSize) : 0);
+		for (int i = pendingCreates.get(); i < wanted && reserveConnectionSlot(); i++) {
+			submitCreator();
+		}
+	}
+
+	/**
+	 * @desc reserveConnectionSlot(占用一个连接名额，已达poolMaxSize时返回false)
+	 * @author taylor
+	 */
+	private boolean reserveConnectionSlot() {
+		while (true) {
+			int total = totalConnections.get();
+			if (total >= poolMaxSize) {
+				return false;
+			}
+			if (totalConnections.compareAndSet(total, total + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void submitCreator() {
+		pendingCreates.incrementAndGet();
+		connectionCreator.execute(new Runnable() {
+			@Override
+			public void run() {
+				PooledConnection cnn = null;
+				try {
+					cnn = shutdown ? null : addConnection();
+				} finally {
+					pendingCreates.decrementAndGet();
+				}
+				if (cnn != null && shutdown) {
+					/**
+					 * 建立连接期间连接池已关闭，shutdown()的清理可能已经扫过，由本线程关闭
+					 */
+					if (cnn.compareAndSetState(PooledConnection.STATE_IDLE, PooledConnection.STATE_REMOVED)) {
+						currentIdleCount.decrementAndGet();
+						retireConnection(cnn);
+					}
+				} else if (cnn != null) {
+					offerIdleConnection(cnn);
+				} else if (!shutdown && waiters.get() > 0) {
+					/**
+					 * 创建失败且仍有线程等待，稍后重试
+					 */
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(500));
+					fillPool();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @desc addConnection(建立一个物理连接并加入池中，调用前需已占用连接名额，失败时归还名额)
+	 * @author taylor
+	 */
+	private PooledConnection addConnection() {
+		long start = System.nanoTime();
+		try {
+			Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+			PooledConnection myConnection = new PooledConnection(false, connection, this);
+			myConnection.initDefaults();
+			poolConnections.add(myConnection);
+			currentIdleCount.incrementAndGet();
+			metricsTracker.recordConnectionCreated(System.nanoTime() - start);
+			return myConnection;
+		} catch (SQLException e) {
+			totalConnections.decrementAndGet();
+			metricsTracker.recordCreationFailure();
+			System.out.println("获取数据库连接失败");
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @desc shutdown(关闭连接池，停止后台线程并关闭空闲连接；等待连接的线程在HANDOFF_RECHECK_NANOS内醒来并抛出IllegalStateException)
+	 * @author taylor
+	 */
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		unregisterMBean();
+		/**
+		 * 构造失败时也会调用，后台线程池可能还没有创建
+		 */
+		if (houseKeeper != null) {
+			houseKeeper.shutdownNow();
+		}
+		if (connectionCreator != null) {
+			connectionCreator.shutdownNow();
+		}
+		if (connectionCloser != null) {
+			connectionCloser.shutdown();
+		}
+		for (PooledConnection cnn : poolConnections) {
+			if (cnn.compareAndSetState(PooledConnection.STATE_IDLE, PooledConnection.STATE_REMOVED)) {
+				currentIdleCount.decrementAndGet();
+				retireConnection(cnn);
+			}
+		}
+	}
+
+	/**
+	 * @ClassName: HouseKeeper
+	 * @Function: 后台维护任务：退役到期连接、回收超时和多余的空闲连接、对空闲连接提前校验保活，最后补足minIdle
+	 */
+	private class HouseKeeper implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				long now = System.currentTimeMillis();
+				long keepaliveBefore = keepaliveTime > 0 ? now - keepaliveTime : Long.MIN_VALUE;
+				for (PooledConnection cnn : poolConnections) {
+					if (shutdown) {
+						return;
+					}
+					if (cnn.getState() == PooledConnection.STATE_IN_USE) {
+						/**
+						 * 借出中的到期连接在归还时退役
+						 */
+						if (now >= cnn.getExpiresAt()) {
+							cnn.markEvicted();
+						}
+						/**
+						 * borrowedAt为0的连接是在检测关闭时借出的，没有借出时间可比较
+						 */
+						long threshold = leakDetectionThreshold;
+						long borrowedAt = cnn.getBorrowedAt();
+						if (threshold > 0 && borrowedAt != 0 && now - borrowedAt > threshold) {
+							reportLeak(cnn, now);
+						}
+						continue;
+					}
+					if (now >= cnn.getExpiresAt()) {
+						evictIdleConnection(cnn);
+					} else if (currentIdleCount.get() > poolMaxIdle || totalConnections.get() > poolMaxSize) {
+						evictIdleConnection(cnn);
+					} else if (idleTimeout > 0 && now - cnn.getLastUsed() > idleTimeout
+							&& currentIdleCount.get() > minIdle) {
+						evictIdleConnection(cnn);
+					} else if (cnn.getLastAlive() <= keepaliveBefore) {
+						keepalive(cnn);
+					}
+				}
+				fillPool();
+			} catch (Throwable t) {
+				System.out.println("连接池维护任务执行失败");
+				t.printStackTrace();
+			}
+		}
+
+		/**
+		 * 每个泄漏只报告一次；开启leakReclaim时强制收回，持有方之后的close()不再生效
+		 */
+		private void reportLeak(PooledConnection cnn, long now) {
+			if (cnn.isLeakReported()) {
+				return;
+			}
+			cnn.markLeakReported();
+			System.out.println("连接疑似泄漏：已被线程" + cnn.getBorrowThread() + "借出" + (now - cnn.getBorrowedAt())
+					+ "毫秒未归还" + (cnn.getBorrowTrace() == null ? "，未采集借出位置" : "，借出位置如下"));
+			if (cnn.getBorrowTrace() != null) {
+				cnn.getBorrowTrace().printStackTrace(System.out);
+			}
+			if (leakReclaim
+					&& cnn.compareAndSetState(PooledConnection.STATE_IN_USE, PooledConnection.STATE_REMOVED)) {
+				System.out.println("已强制回收泄漏的连接");
+				busyCount.decrementAndGet();
+				retireConnection(cnn);
+			}
+		}
+
+		private void evictIdleConnection(PooledConnection cnn) {
+			if (cnn.compareAndSetState(PooledConnection.STATE_IDLE, PooledConnection.STATE_REMOVED)) {
+				currentIdleCount.decrementAndGet();
+				retireConnection(cnn);
+			}
+		}
+
+		/**
+		 * 校验期间置为STATE_RESERVED，借用线程会跳过该连接
+		 */
+		private void keepalive(PooledConnection cnn) {
+			if (!cnn.compareAndSetState(PooledConnection.STATE_IDLE, PooledConnection.STATE_RESERVED)) {
+				return;
+			}
+			if (isConnectionAlive(cnn.getConnection())) {
+				cnn.markValidated();
+				cnn.compareAndSetState(PooledConnection.STATE_RESERVED, PooledConnection.STATE_IDLE);
+				offerIdleConnection(cnn);
+			} else {
+				cnn.compareAndSetState(PooledConnection.STATE_RESERVED, PooledConnection.STATE_REMOVED);
+				currentIdleCount.decrementAndGet();
+				retireConnection(cnn);
+			}
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.taylor;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * @ClassName: MyPoolDataSource
+ * @Function: 基于MyPool的javax.sql.DataSource，通过Builder以代码方式配置，每个实例持有一个独立的连接池
+ * @author Taylor
+ */
+public class MyPoolDataSource implements DataSource, AutoCloseable {
+
+	private final MyPool pool;
+
+	private PrintWriter logWriter;
+
+	public MyPoolDataSource(MyPool pool) {
+		this.pool = pool;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public MyPool getPool() {
+		return pool;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		try {
+			return pool.getJdbcConnection();
+		} catch (ConnectionTimeoutException e) {
+			throw new SQLTransientConnectionException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 连接池中的连接使用统一的账号，不支持按调用指定
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("MyPoolDataSource不支持按调用指定用户名和密码");
+	}
+
+	/**
+	 * @desc close(关闭连接池)
+	 * @author taylor
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return logWriter;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		this.logWriter = out;
+	}
+
+	/**
+	 * 登录超时即获取连接的等待时间
+	 */
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		if (seconds > 0) {
+			pool.setConnectionTimeout(TimeUnit.SECONDS.toMillis(seconds));
+		}
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return (int) TimeUnit.MILLISECONDS.toSeconds(pool.getConnectionTimeout());
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		if (iface.isInstance(pool)) {
+			return iface.cast(pool);
+		}
+		throw new SQLException("无法转换为" + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(pool);
+	}
+
+	/**
+	 * @ClassName: Builder
+	 * @Function: 以代码方式设置与config/jdbc.properties相同的配置项，未设置的使用MyPool的默认值
+	 */
+	public static class Builder {
+
+		private final Properties properties = new Properties();
+
+		public Builder poolName(String poolName) {
+			return property("jdbc.poolName", poolName);
+		}
+
+		public Builder driverClassName(String driverClassName) {
+			return property("jdbc.driver", driverClassName);
+		}
+
+		public Builder url(String url) {
+			return property("jdbc.url", url);
+		}
+
+		public Builder username(String username) {
+			return property("jdbc.username", username);
+		}
+
+		public Builder password(String password) {
+			return property("jdbc.password", password);
+		}
+
+		public Builder initSize(int initSize) {
+			return property("jdbc.initSize", initSize);
+		}
+
+		public Builder stepSize(int stepSize) {
+			return property("jdbc.stepSize", stepSize);
+		}
+
+		public Builder minIdle(int minIdle) {
+			return property("jdbc.minIdle", minIdle);
+		}
+
+		public Builder maxIdle(int maxIdle) {
+			return property("jdbc.maxIdle", maxIdle);
+		}
+
+		public Builder maxSize(int maxSize) {
+			return property("jdbc.maxSize", maxSize);
+		}
+
+		public Builder createThreads(int createThreads) {
+			return property("jdbc.createThreads", createThreads);
+		}
+
+		public Builder connectionTimeout(long timeout, TimeUnit unit) {
+			return property("jdbc.connectionTimeout", unit.toMillis(timeout));
+		}
+
+		public Builder idleTimeout(long timeout, TimeUnit unit) {
+			return property("jdbc.idleTimeout", unit.toMillis(timeout));
+		}
+
+		public Builder maxLifetime(long lifetime, TimeUnit unit) {
+			return property("jdbc.maxLifetime", unit.toMillis(lifetime));
+		}
+
+		public Builder keepaliveTime(long time, TimeUnit unit) {
+			return property("jdbc.keepaliveTime", unit.toMillis(time));
+		}
+
+		public Builder validationWindow(long window, TimeUnit unit) {
+			return property("jdbc.validationWindow", unit.toMillis(window));
+		}
+
+		public Builder validationTimeout(long timeout, TimeUnit unit) {
+			return property("jdbc.validationTimeout", unit.toMillis(timeout));
+		}
+
+		public Builder testQuery(String testQuery) {
+			return property("jdbc.testQuery", testQuery);
+		}
+
+		public Builder leakDetectionThreshold(long threshold, TimeUnit unit) {
+			return property("jdbc.leakDetectionThreshold", unit.toMillis(threshold));
+		}
+
+		public Builder statementCacheSize(int statementCacheSize) {
+			return property("jdbc.statementCacheSize", statementCacheSize);
+		}
+
+		/**
+		 * @desc eagerFill(构造时同步建立initSize个连接，默认由后台异步建立)
+		 * @param eagerFill
+		 * @author taylor
+		 */
+		public Builder eagerFill(boolean eagerFill) {
+			return property("jdbc.eagerFill", eagerFill);
+		}
+
+		/**
+		 * @desc streamFetchSize(流式查询每次从数据库读取的行数)
+		 * @param streamFetchSize
+		 * @author taylor
+		 */
+		public Builder streamFetchSize(int streamFetchSize) {
+			return property("jdbc.streamFetchSize", streamFetchSize);
+		}
+
+		/**
+		 * @desc property(设置任意jdbc.*配置项)
+		 * @param key
+		 * @param value
+		 * @author taylor
+		 */
+		public Builder property(String key, Object value) {
+			if (value == null) {
+				properties.remove(key);
+			} else {
+				properties.setProperty(key, String.valueOf(value));
+			}
+			return this;
+		}
+
+		public MyPoolDataSource build() {
+			if (properties.getProperty("jdbc.url") == null) {
+				throw new IllegalStateException("未设置jdbc.url");
+			}
+			return new MyPoolDataSource(new MyPool(properties));
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.taylor;
+
+/**
+ * @ClassName: MyPoolMXBean
+ * @Function: 连接池的JMX管理接口，提供实时计数并支持运行时调整容量
+ * @author Taylor
+ */
+public interface MyPoolMXBean {
+
+	public String getPoolName();
+
+	public int getTotalConnections();
+
+	public int getIdleConnections();
+
+	public int getActiveConnections();
+
+	public int getThreadsAwaitingConnection();
+
+	public int getPoolMaxSize();
+
+	/**
+	 * @desc setPoolMaxSize(调整最大连接数，扩大时立即为等待的线程补充连接，缩小时多余的空闲连接由后台维护线程回收)
+	 * @param poolMaxSize
+	 * @author taylor
+	 */
+	public void setPoolMaxSize(int poolMaxSize);
+
+	public int getPoolMaxIdle();
+
+	public void setPoolMaxIdle(int poolMaxIdle);
+
+	public int getMinIdle();
+
+	public void setMinIdle(int minIdle);
+
+}
@@ -1,49 +1,257 @@
-package com.taylor;
-
-import java.sql.ResultSet;
-import java.sql.SQLException;
-
-public class PoolManager {
-
-	private static class PoolHolder {
-		private static IMyPool mypool = new MyPool();
-	}
-
-	public static IMyPool getInstance() {
-		return PoolHolder.mypool;
-	}
-
-	public  static void selectOne() {
-		PooledConnection cnn = PoolManager.getInstance().getConnection();
-		ResultSet rs = cnn.queryBySql("select * from test");
-		System.out.println("线程名：" + Thread.currentThread().getName());
-		try {
-			while (rs.next()) {
-				System.out.print(rs.getString(1) + "\t");
-				System.out.print(rs.getString(2) + "\t");
-				System.out.println();
-			}
-			try {
-				Thread.sleep(3000);
-			} catch (InterruptedException e1) {
-				e1.printStackTrace();
-			}
-			rs.close();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-		cnn.close();
-	}
-
-	public static void main(String[] args) throws SQLException {
-		for (int i = 0; i <1500; i++) {
-			new Thread(new Runnable() {
-				@Override
-				public void run() {
-					selectOne();
-				}
-			}).start();
-		}
-
-	}
-}
+package com.taylor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName: PoolManager
+ * @Function: 管理一个主库连接池和若干从库连接池：读请求路由到当前未完成请求(借出加等待)最少的从库，写请求走主库；
+ *            线程借着主库写连接期间以及归还后的readYourWritesWindow内，它的读请求也走主库，避免读到从库尚未同步的旧数据
+ *            从库配置为jdbc.replica.N.*(N从1开始连续编号)，未写的配置项沿用主库的jdbc.*，如jdbc.replica.1.url
+ * @author Taylor
+ */
+public class PoolManager {
+
+	private static class PoolHolder {
+		private static PoolManager manager = new PoolManager(MyPool.loadProperties());
+	}
+
+	private static final String REPLICA_PREFIX = "jdbc.replica.";
+
+	private final MyPool primary;
+
+	private final List<MyPool> replicas;
+
+	/**
+	 * 写后读走主库的时间窗口(纳秒)
+	 */
+	private volatile long readYourWritesWindow;
+
+	/**
+	 * 当前线程的写状态；写连接可能在其他线程归还，归还时更新的是借出线程的状态
+	 */
+	private final ThreadLocal<WriteState> writeState = new ThreadLocal<WriteState>() {
+		@Override
+		protected WriteState initialValue() {
+			return new WriteState();
+		}
+	};
+
+	/**
+	 * @param properties
+	 *            主库的jdbc.*配置项加上从库的jdbc.replica.N.*配置项
+	 */
+	public PoolManager(Properties properties) {
+		this.primary = new MyPool(properties);
+		List<MyPool> pools = new ArrayList<>();
+		try {
+			for (int i = 1; properties.getProperty(REPLICA_PREFIX + i + ".url") != null; i++) {
+				pools.add(new MyPool(replicaProperties(properties, i, primary.getPoolName())));
+			}
+			this.readYourWritesWindow = TimeUnit.MILLISECONDS
+					.toNanos(Long.valueOf(properties.getProperty("jdbc.readYourWritesWindow", "1000")));
+		} catch (RuntimeException | Error e) {
+			/**
+			 * 某个从库初始化失败时关闭主库和已建好的从库，不留下无人引用的连接和后台线程
+			 */
+			primary.shutdown();
+			for (MyPool replica : pools) {
+				replica.shutdown();
+			}
+			throw e;
+		}
+		this.replicas = Collections.unmodifiableList(pools);
+	}
+
+	/**
+	 * @desc replicaProperties(第index个从库的配置：主库配置被jdbc.replica.index.*覆盖，连接池默认命名为主库名-replica-index)
+	 * @param primaryName
+	 *            主库连接池的名称，主库未命名时是自动生成的名称
+	 * @author taylor
+	 */
+	static Properties replicaProperties(Properties properties, int index, String primaryName) {
+		String prefix = REPLICA_PREFIX + index + ".";
+		Properties replica = new Properties();
+		for (String key : properties.stringPropertyNames()) {
+			if (!key.startsWith(REPLICA_PREFIX)) {
+				replica.setProperty(key, properties.getProperty(key));
+			}
+		}
+		replica.setProperty("jdbc.poolName", primaryName + "-replica-" + index);
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(prefix)) {
+				replica.setProperty("jdbc." + key.substring(prefix.length()), properties.getProperty(key));
+			}
+		}
+		return replica;
+	}
+
+	/**
+	 * @desc getInstance(主库连接池)
+	 * @author taylor
+	 */
+	public static IMyPool getInstance() {
+		return PoolHolder.manager.primary;
+	}
+
+	/**
+	 * @desc getManager(按config/jdbc.properties创建的PoolManager)
+	 * @author taylor
+	 */
+	public static PoolManager getManager() {
+		return PoolHolder.manager;
+	}
+
+	public MyPool getPrimary() {
+		return primary;
+	}
+
+	public List<MyPool> getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * @desc getReadPool(读请求使用的连接池：没有从库或当前线程在写后窗口内时为主库，否则为未完成请求最少的从库，相同时随机选择)
+	 * @author taylor
+	 */
+	public IMyPool getReadPool() {
+		int size = replicas.size();
+		if (size == 0 || isPinnedToPrimary()) {
+			return primary;
+		}
+		int start = ThreadLocalRandom.current().nextInt(size);
+		MyPool best = null;
+		int bestOutstanding = Integer.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			MyPool replica = replicas.get((start + i) % size);
+			if (replica.isShutdown()) {
+				continue;
+			}
+			int outstanding = replica.getActiveConnections() + replica.getThreadsAwaitingConnection();
+			if (outstanding < bestOutstanding) {
+				best = replica;
+				bestOutstanding = outstanding;
+			}
+		}
+		return best == null ? primary : best;
+	}
+
+	/**
+	 * @desc getReadConnection(借一个读连接，见getReadPool())
+	 * @author taylor
+	 */
+	public PooledConnection getReadConnection() {
+		return getReadPool().getConnection();
+	}
+
+	/**
+	 * @desc getWriteConnection(借一个主库连接；借出期间当前线程的读请求走主库，归还时记下写入时间，
+	 *       之后readYourWritesWindow内仍走主库，事务再长也从提交归还时算起)
+	 * @author taylor
+	 */
+	public PooledConnection getWriteConnection() {
+		PooledConnection cnn = primary.getConnection();
+		final WriteState state = writeState.get();
+		state.open.incrementAndGet();
+		cnn.onRelease(new Runnable() {
+			@Override
+			public void run() {
+				state.lastWrite = System.nanoTime();
+				state.open.decrementAndGet();
+			}
+		});
+		return cnn;
+	}
+
+	/**
+	 * @desc markWrite(记录当前线程写过主库，用于不经getWriteConnection()的写入)
+	 * @author taylor
+	 */
+	public void markWrite() {
+		writeState.get().lastWrite = System.nanoTime();
+	}
+
+	/**
+	 * @desc isPinnedToPrimary(当前线程是否借着写连接或在写后窗口内)
+	 * @author taylor
+	 */
+	public boolean isPinnedToPrimary() {
+		WriteState state = writeState.get();
+		if (state.open.get() > 0) {
+			return true;
+		}
+		long written = state.lastWrite;
+		return written != 0 && System.nanoTime() - written < readYourWritesWindow;
+	}
+
+	public void setReadYourWritesWindow(long window, TimeUnit unit) {
+		this.readYourWritesWindow = unit.toNanos(window);
+	}
+
+	public long getReadYourWritesWindow(TimeUnit unit) {
+		return unit.convert(readYourWritesWindow, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @desc shutdown(关闭主库和全部从库连接池)
+	 * @author taylor
+	 */
+	public void shutdown() {
+		primary.shutdown();
+		for (MyPool replica : replicas) {
+			replica.shutdown();
+		}
+	}
+
+	/**
+	 * @ClassName: WriteState
+	 * @Function: 一个线程最近一次写主库的时间(System.nanoTime()，0表示未写过)和未归还的写连接数
+	 */
+	private static final class WriteState {
+
+		private volatile long lastWrite;
+
+		private final AtomicInteger open = new AtomicInteger();
+	}
+
+	public  static void selectOne() {
+		PooledConnection cnn = PoolManager.getManager().getReadConnection();
+		ResultSet rs = cnn.queryBySql("select * from test");
+		System.out.println("线程名：" + Thread.currentThread().getName());
+		try {
+			while (rs.next()) {
+				System.out.print(rs.getString(1) + "\t");
+				System.out.print(rs.getString(2) + "\t");
+				System.out.println();
+			}
+			try {
+				Thread.sleep(3000);
+			} catch (InterruptedException e1) {
+				e1.printStackTrace();
+			}
+			rs.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		cnn.close();
+	}
+
+	public static void main(String[] args) throws SQLException {
+		for (int i = 0; i <1500; i++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					selectOne();
+				}
+			}).start();
+		}
+
+	}
+}
@@ -1,79 +1,553 @@
-package com.taylor;
-
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Vector;
-
-import lombok.Data;
-
-/**
- * @ClassName: MyConnection
- * @Function: 自定义数据库连接封装类
- * @date: 2016年11月25日 上午1:16:09
- * @author Taylor
- */
-@Data
-public class PooledConnection {
-
-	private boolean isBusy;
-
-	private Connection connection;
-
-	private MyPool myPool;
-
-	public synchronized void close() {
-		this.isBusy = false;
-		myPool.busyCount.decrementAndGet();
-		myPool.currentIdleCount.incrementAndGet();
-		if (myPool.currentIdleCount.get() > myPool.getPoolMaxIdle()) {
-			synchronized (myPool) {
-				if (myPool.currentIdleCount.get() > myPool.getPoolMaxIdle()) {
-					Vector<PooledConnection> list = myPool.getPoolConnections();
-					for (int i = list.size() - 1; i >= 0 && myPool.currentIdleCount.get() > myPool.getPoolMaxIdle(); i--) {
-						if (!list.get(i).isBusy) {
-							Connection cnn = list.remove(i).getConnection();
-							if (cnn != null) {
-								try {
-									if (!cnn.isClosed()) {
-										cnn.close();
-									}
-								} catch (SQLException e) {
-									System.out.println("关闭连接失败");
-									e.printStackTrace();
-								}
-							}
-							myPool.currentIdleCount.decrementAndGet();
-						}
-					}
-				}
-			}
-		}
-		System.out.println("当前总连接数：" + myPool.getPoolConnections().size());
-		System.out.println("当前工作连接数：" + myPool.busyCount);
-		System.out.println("当前空闲连接数：" + myPool.currentIdleCount);
-
-	}
-
-	public PooledConnection(boolean isBusy, Connection connection, MyPool myPool) {
-		super();
-		this.isBusy = isBusy;
-		this.connection = connection;
-		this.myPool = myPool;
-	}
-
-	public ResultSet queryBySql(String sql) {
-		Statement statement = null;
-		ResultSet result = null;
-		try {
-			statement = this.connection.createStatement();
-			result = statement.executeQuery(sql);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-		return result;
-
-	}
-
-}
+package com.taylor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * @ClassName: MyConnection
+ * @Function: 自定义数据库连接封装类
+ * @date: 2016年11月25日 上午1:16:09
+ * @author Taylor
+ */
+@Getter
+public class PooledConnection {
+
+	/**
+	 * 已从池中移除
+	 */
+	public static final int STATE_REMOVED = -1;
+
+	/**
+	 * 空闲，可被借出
+	 */
+	public static final int STATE_IDLE = 0;
+
+	/**
+	 * 已被借出
+	 */
+	public static final int STATE_IN_USE = 1;
+
+	/**
+	 * 被连接池内部占用(校验、回收等)，借用方需跳过
+	 */
+	public static final int STATE_RESERVED = -2;
+
+	private static final AtomicIntegerFieldUpdater<PooledConnection> STATE_UPDATER = AtomicIntegerFieldUpdater
+			.newUpdater(PooledConnection.class, "state");
+
+	private static final AtomicIntegerFieldUpdater<PooledConnection> QUEUED_UPDATER = AtomicIntegerFieldUpdater
+			.newUpdater(PooledConnection.class, "queued");
+
+	private volatile int state;
+
+	/**
+	 * 是否已在空闲队列中(1是 0否)
+	 */
+	private volatile int queued;
+
+	/**
+	 * 最近一次使用(创建或归还)的时间
+	 */
+	private volatile long lastUsed = System.currentTimeMillis();
+
+	/**
+	 * 最近一次校验通过的时间
+	 */
+	private volatile long lastValidated;
+
+	/**
+	 * 到期时间，到期后由连接池退役，各连接带随机抖动避免同时重连
+	 */
+	private final long expiresAt;
+
+	/**
+	 * 借出期间已到期，归还时退役
+	 */
+	private volatile boolean evicted;
+
+	/**
+	 * 借出时间，仅开启泄漏检测时记录，未记录时为0
+	 */
+	private volatile long borrowedAt;
+
+	/**
+	 * 借出线程名，仅开启泄漏检测时记录
+	 */
+	private volatile String borrowThread;
+
+	/**
+	 * 借出位置的调用栈，按采样率采集，未采集时为null
+	 */
+	private volatile Exception borrowTrace;
+
+	private volatile boolean leakReported;
+
+	/**
+	 * 借出时刻(System.nanoTime())，用于统计使用时长
+	 */
+	private long checkedOutAt;
+
+	/**
+	 * 物理连接建立时的默认属性，ProxyConnection归还时据此恢复
+	 */
+	private boolean defaultAutoCommit;
+
+	private int defaultTransactionIsolation;
+
+	private boolean defaultReadOnly;
+
+	private Connection connection;
+
+	private MyPool myPool;
+
+	/**
+	 * 按SQL缓存的PreparedStatement，按访问顺序淘汰最久未用的语句
+	 */
+	@Getter(AccessLevel.NONE)
+	private final Map<String, PreparedStatement> statementCache;
+
+	/**
+	 * 保护statementCache，持锁期间会调用驱动预编译；用显式锁而非synchronized，虚拟线程在其中阻塞时不会占住载体线程
+	 */
+	@Getter(AccessLevel.NONE)
+	private final ReentrantLock statementLock = new ReentrantLock();
+
+	/**
+	 * 被挤出缓存的语句，当前借用方可能还在用，归还连接时才关闭；由statementLock保护
+	 */
+	@Getter(AccessLevel.NONE)
+	private final List<PreparedStatement> evictedStatements = new ArrayList<>();
+
+	/**
+	 * 本次借出归还时执行一次，见onRelease()
+	 */
+	@Getter(AccessLevel.NONE)
+	private volatile Runnable releaseListener;
+
+	public void close() {
+		Runnable listener = releaseListener;
+		if (listener != null) {
+			releaseListener = null;
+			listener.run();
+		}
+		closeEvictedStatements();
+		myPool.releaseConnection(this);
+	}
+
+	/**
+	 * @desc onRelease(本次借出归还时执行listener，只执行一次)
+	 * @param listener
+	 * @author taylor
+	 */
+	void onRelease(Runnable listener) {
+		releaseListener = listener;
+	}
+
+	public PooledConnection(boolean isBusy, Connection connection, MyPool myPool) {
+		super();
+		this.state = isBusy ? STATE_IN_USE : STATE_IDLE;
+		this.connection = connection;
+		this.myPool = myPool;
+		final int statementCacheSize = myPool.getStatementCacheSize();
+		this.statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= statementCacheSize) {
+					return false;
+				}
+				evictedStatements.add(eldest.getValue());
+				return true;
+			}
+		};
+		long maxLifetime = myPool.getMaxLifetime();
+		if (maxLifetime > 0) {
+			long jitter = maxLifetime > 10000 ? ThreadLocalRandom.current().nextLong(maxLifetime / 40) : 0;
+			this.expiresAt = lastUsed + maxLifetime - jitter;
+		} else {
+			this.expiresAt = Long.MAX_VALUE;
+		}
+	}
+
+	public boolean isBusy() {
+		return state == STATE_IN_USE;
+	}
+
+	/**
+	 * @desc compareAndSetState(CAS修改连接状态)
+	 * @param expect
+	 * @param update
+	 * @author taylor
+	 */
+	public boolean compareAndSetState(int expect, int update) {
+		return STATE_UPDATER.compareAndSet(this, expect, update);
+	}
+
+	/**
+	 * @desc markQueued(标记为已入空闲队列，已在队列中时返回false)
+	 * @author taylor
+	 */
+	boolean markQueued() {
+		return QUEUED_UPDATER.compareAndSet(this, 0, 1);
+	}
+
+	void clearQueued() {
+		queued = 0;
+	}
+
+	void touch() {
+		lastUsed = System.currentTimeMillis();
+	}
+
+	void markValidated() {
+		lastValidated = System.currentTimeMillis();
+	}
+
+	/**
+	 * @desc getLastAlive(最近一次确认连接可用的时间)
+	 * @author taylor
+	 */
+	public long getLastAlive() {
+		return Math.max(lastUsed, lastValidated);
+	}
+
+	/**
+	 * @desc initDefaults(记录物理连接的默认属性)
+	 * @author taylor
+	 */
+	void initDefaults() throws SQLException {
+		defaultAutoCommit = connection.getAutoCommit();
+		defaultTransactionIsolation = connection.getTransactionIsolation();
+		defaultReadOnly = connection.isReadOnly();
+	}
+
+	void markCheckedOut() {
+		checkedOutAt = System.nanoTime();
+	}
+
+	void markEvicted() {
+		evicted = true;
+	}
+
+	/**
+	 * @desc markBorrowed(记录借出信息，供泄漏检测使用)
+	 * @param captureTrace
+	 *            是否采集借出位置的调用栈
+	 * @author taylor
+	 */
+	void markBorrowed(boolean captureTrace) {
+		borrowedAt = System.currentTimeMillis();
+		borrowThread = Thread.currentThread().getName();
+		borrowTrace = captureTrace ? new Exception("连接借出位置") : null;
+		leakReported = false;
+	}
+
+	/**
+	 * @desc clearBorrowed(未开启泄漏检测时借出，清除上一次借出的记录)
+	 * @author taylor
+	 */
+	void clearBorrowed() {
+		borrowedAt = 0;
+		borrowThread = null;
+		borrowTrace = null;
+	}
+
+	void markLeakReported() {
+		leakReported = true;
+	}
+
+	/**
+	 * @desc prepare(获取预编译语句，开启语句缓存时重复的SQL复用同一个PreparedStatement，调用方不要关闭缓存的语句)
+	 * @param sql
+	 * @author taylor
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		if (myPool.getStatementCacheSize() <= 0) {
+			return connection.prepareStatement(sql);
+		}
+		statementLock.lock();
+		try {
+			PreparedStatement statement = statementCache.get(sql);
+			if (statement != null && !statement.isClosed()) {
+				statement.clearParameters();
+				return statement;
+			}
+			statement = connection.prepareStatement(sql);
+			statementCache.put(sql, statement);
+			return statement;
+		} finally {
+			statementLock.unlock();
+		}
+	}
+
+	/**
+	 * @desc closeStatements(关闭缓存的全部语句，物理连接关闭前调用)
+	 * @author taylor
+	 */
+	void closeStatements() {
+		statementLock.lock();
+		try {
+			for (PreparedStatement statement : statementCache.values()) {
+				closeStatement(statement);
+			}
+			statementCache.clear();
+			for (PreparedStatement statement : evictedStatements) {
+				closeStatement(statement);
+			}
+			evictedStatements.clear();
+		} finally {
+			statementLock.unlock();
+		}
+	}
+
+	/**
+	 * @desc closeEvictedStatements(关闭借出期间被挤出缓存的语句，归还连接时调用)
+	 * @author taylor
+	 */
+	private void closeEvictedStatements() {
+		statementLock.lock();
+		try {
+			for (PreparedStatement statement : evictedStatements) {
+				closeStatement(statement);
+			}
+			evictedStatements.clear();
+		} finally {
+			statementLock.unlock();
+		}
+	}
+
+	private static void closeStatement(Statement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			System.out.println("关闭语句失败");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @desc queryRows(执行查询并把结果复制为独立的行，返回时结果集已关闭，行不再引用连接)
+	 * @param sql
+	 * @param params
+	 *            按顺序绑定到SQL中的?
+	 * @author taylor
+	 */
+	public List<Row> queryRows(String sql, Object... params) throws SQLException {
+		boolean cached = myPool.getStatementCacheSize() > 0;
+		PreparedStatement statement = cached ? prepare(sql) : connection.prepareStatement(sql);
+		try {
+			if (params != null) {
+				for (int i = 0; i < params.length; i++) {
+					statement.setObject(i + 1, params[i]);
+				}
+			}
+			ResultSet rs = statement.executeQuery();
+			try {
+				Row.Columns columns = Row.Columns.of(rs.getMetaData());
+				ArrayList<Row> rows = new ArrayList<>();
+				while (rs.next()) {
+					rows.add(Row.read(rs, columns));
+				}
+				rows.trimToSize();
+				return rows;
+			} finally {
+				rs.close();
+			}
+		} finally {
+			if (!cached) {
+				statement.close();
+			}
+		}
+	}
+
+	/**
+	 * @desc stream(流式查询，逐行回调handler。按连接池的streamFetchSize分批从数据库读取，已处理的行不保留，内存占用与结果大小无关；
+	 *       结束或出错后关闭语句和结果集，连接仍由调用方归还；借连接只为流式查询一次时用MyPool.stream())
+	 * @param sql
+	 * @param params
+	 *            按顺序绑定到SQL中的?，可为null
+	 * @param handler
+	 * @return 处理的行数
+	 * @author taylor
+	 */
+	public long stream(String sql, Object[] params, RowHandler handler) throws SQLException {
+		RowCursor cursor = openCursor(sql, params, false);
+		try {
+			long count = 0;
+			Row row;
+			while ((row = cursor.next()) != null) {
+				handler.handle(row);
+				count++;
+			}
+			return count;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * @desc streamRows(流式查询，返回惰性的Stream，遍历时才从数据库分批读取。读完最后一行或Stream被close()时关闭语句和结果集，
+	 *       连接仍由调用方归还，须在Stream用完之后；提前结束遍历(如limit、findFirst)时必须close()，建议用try-with-resources；
+	 *       遍历中的SQLException包装为UncheckedSQLException)
+	 * @param sql
+	 * @param params
+	 * @author taylor
+	 */
+	public Stream<Row> streamRows(String sql, Object... params) throws SQLException {
+		return openStream(sql, params, false);
+	}
+
+	/**
+	 * @param release
+	 *            游标关闭时归还本连接，只用于MyPool.streamRows()借出的连接
+	 */
+	Stream<Row> openStream(String sql, Object[] params, boolean release) throws SQLException {
+		RowCursor cursor = openCursor(sql, params, release);
+		return StreamSupport.stream(cursor, false).onClose(cursor::close);
+	}
+
+	/**
+	 * 流式查询不使用语句缓存：打开的结果集占用语句直到读完，并且fetchSize只对本次查询生效
+	 */
+	private RowCursor openCursor(String sql, Object[] params, boolean release) throws SQLException {
+		PreparedStatement statement = null;
+		try {
+			statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statement.setFetchSize(myPool.getStreamFetchSize());
+			if (params != null) {
+				for (int i = 0; i < params.length; i++) {
+					statement.setObject(i + 1, params[i]);
+				}
+			}
+			return new RowCursor(statement, statement.executeQuery(), release);
+		} catch (SQLException | RuntimeException e) {
+			if (statement != null) {
+				closeStatement(statement);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @ClassName: RowCursor
+	 * @Function: 流式查询的游标，每次复制一行，关闭时关闭语句和结果集
+	 */
+	private class RowCursor extends Spliterators.AbstractSpliterator<Row> {
+
+		private final Statement statement;
+
+		private final ResultSet rs;
+
+		private final Row.Columns columns;
+
+		private final boolean release;
+
+		private boolean closed;
+
+		RowCursor(Statement statement, ResultSet rs, boolean release) throws SQLException {
+			super(Long.MAX_VALUE, ORDERED | NONNULL);
+			this.statement = statement;
+			this.rs = rs;
+			this.release = release;
+			this.columns = Row.Columns.of(rs.getMetaData());
+		}
+
+		/**
+		 * 没有更多行时关闭游标并返回null
+		 */
+		Row next() throws SQLException {
+			if (closed) {
+				return null;
+			}
+			if (!rs.next()) {
+				close();
+				return null;
+			}
+			return Row.read(rs, columns);
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Row> action) {
+			Row row;
+			try {
+				row = next();
+			} catch (SQLException e) {
+				close();
+				throw new UncheckedSQLException(e);
+			}
+			if (row == null) {
+				return false;
+			}
+			action.accept(row);
+			return true;
+		}
+
+		void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				rs.close();
+			} catch (SQLException e) {
+				System.out.println("关闭结果集失败");
+				e.printStackTrace();
+			}
+			closeStatement(statement);
+			if (release) {
+				PooledConnection.this.close();
+			}
+		}
+	}
+
+	/**
+	 * @desc queryBySql(执行查询，调用方用完须关闭结果集；未开启语句缓存时语句随结果集一起关闭)
+	 * @param sql
+	 * @author taylor
+	 */
+	public ResultSet queryBySql(String sql) {
+		Statement statement = null;
+		ResultSet result = null;
+		try {
+			/**
+			 * 开启语句缓存时复用缓存的语句，不再每次新建Statement
+			 */
+			if (myPool.getStatementCacheSize() > 0) {
+				return prepare(sql).executeQuery();
+			}
+			statement = this.connection.createStatement();
+			result = statement.executeQuery(sql);
+			/**
+			 * 语句随调用方关闭结果集一起关闭，否则每次查询泄漏一个Statement
+			 */
+			statement.closeOnCompletion();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (statement != null) {
+				closeStatement(statement);
+			}
+			result = null;
+		}
+		return result;
+
+	}
+
+}
@@ -0,0 +1,496 @@
+package com.taylor;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * @ClassName: ProxyConnection
+ * @Function: 借出给JDBC代码使用的连接包装类，close()时归还连接池而不是关闭物理连接
+ *            归还前关闭借出期间打开的Statement(其ResultSet随之关闭)，并只在被修改过时恢复autoCommit、事务隔离级别和只读属性
+ *            创建的Statement经ProxyStatement包装，其getConnection()返回本连接而不是物理连接
+ * @author Taylor
+ */
+public class ProxyConnection implements Connection {
+
+	/**
+	 * 跟踪的Statement达到此数量时清理已关闭的
+	 */
+	private static final int STATEMENT_PRUNE_SIZE = 32;
+
+	private final PooledConnection pooledConnection;
+
+	private final Connection delegate;
+
+	private final List<Statement> openStatements = new ArrayList<>();
+
+	private boolean closed;
+
+	private boolean autoCommitDirty;
+
+	private boolean isolationDirty;
+
+	private boolean readOnlyDirty;
+
+	/**
+	 * 非自动提交时，自上次commit/rollback后是否执行过语句
+	 */
+	private boolean transactionDirty;
+
+	ProxyConnection(PooledConnection pooledConnection) {
+		this.pooledConnection = pooledConnection;
+		this.delegate = pooledConnection.getConnection();
+	}
+
+	public PooledConnection getPooledConnection() {
+		return pooledConnection;
+	}
+
+	/**
+	 * @desc close(归还连接：关闭未关闭的语句，回滚未提交的事务，恢复被修改的属性后放回连接池；
+	 *       其中任一步失败时连接状态不确定，标记为驱逐后再归还，连接池会关闭它而不是再借出，
+	 *       抛出第一个异常，其余的附在它的suppressed中)
+	 * @author taylor
+	 */
+	@Override
+	public void close() throws SQLException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		SQLException failure = null;
+		try {
+			for (Statement statement : openStatements) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					failure = addFailure(failure, e);
+				}
+			}
+			openStatements.clear();
+			try {
+				if (transactionDirty && !delegate.getAutoCommit()) {
+					delegate.rollback();
+				}
+				if (autoCommitDirty) {
+					delegate.setAutoCommit(pooledConnection.isDefaultAutoCommit());
+				}
+				if (isolationDirty) {
+					delegate.setTransactionIsolation(pooledConnection.getDefaultTransactionIsolation());
+				}
+				if (readOnlyDirty) {
+					delegate.setReadOnly(pooledConnection.isDefaultReadOnly());
+				}
+			} catch (SQLException e) {
+				failure = addFailure(failure, e);
+			} catch (RuntimeException e) {
+				pooledConnection.markEvicted();
+				throw e;
+			}
+			if (failure != null) {
+				pooledConnection.markEvicted();
+				throw failure;
+			}
+		} finally {
+			pooledConnection.close();
+		}
+	}
+
+	private static SQLException addFailure(SQLException failure, SQLException e) {
+		if (failure == null) {
+			return e;
+		}
+		failure.addSuppressed(e);
+		return failure;
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return closed;
+	}
+
+	private void checkOpen() throws SQLException {
+		if (closed) {
+			throw new SQLException("连接已归还连接池");
+		}
+	}
+
+	private <T extends Statement> T track(T statement) throws SQLException {
+		if (openStatements.size() >= STATEMENT_PRUNE_SIZE) {
+			for (int i = openStatements.size() - 1; i >= 0; i--) {
+				if (openStatements.get(i).isClosed()) {
+					openStatements.remove(i);
+				}
+			}
+		}
+		openStatements.add(statement);
+		transactionDirty = true;
+		return statement;
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		checkOpen();
+		Statement statement = delegate.createStatement();
+		return track(new ProxyStatement(this, statement));
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+		checkOpen();
+		Statement statement = delegate.createStatement(resultSetType, resultSetConcurrency);
+		return track(new ProxyStatement(this, statement));
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+			throws SQLException {
+		checkOpen();
+		Statement statement = delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+		return track(new ProxyStatement(this, statement));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		checkOpen();
+		PreparedStatement statement = delegate.prepareStatement(sql);
+		return track(new ProxyPreparedStatement(this, statement));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		checkOpen();
+		PreparedStatement statement = delegate.prepareStatement(sql, resultSetType, resultSetConcurrency);
+		return track(new ProxyPreparedStatement(this, statement));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		checkOpen();
+		PreparedStatement statement = delegate.prepareStatement(sql, resultSetType, resultSetConcurrency,
+				resultSetHoldability);
+		return track(new ProxyPreparedStatement(this, statement));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		checkOpen();
+		PreparedStatement statement = delegate.prepareStatement(sql, autoGeneratedKeys);
+		return track(new ProxyPreparedStatement(this, statement));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		checkOpen();
+		PreparedStatement statement = delegate.prepareStatement(sql, columnIndexes);
+		return track(new ProxyPreparedStatement(this, statement));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		checkOpen();
+		PreparedStatement statement = delegate.prepareStatement(sql, columnNames);
+		return track(new ProxyPreparedStatement(this, statement));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		checkOpen();
+		CallableStatement statement = delegate.prepareCall(sql);
+		return track(new ProxyCallableStatement(this, statement));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		checkOpen();
+		CallableStatement statement = delegate.prepareCall(sql, resultSetType, resultSetConcurrency);
+		return track(new ProxyCallableStatement(this, statement));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		checkOpen();
+		CallableStatement statement = delegate.prepareCall(sql, resultSetType, resultSetConcurrency,
+				resultSetHoldability);
+		return track(new ProxyCallableStatement(this, statement));
+	}
+
+	@Override
+	public String nativeSQL(String sql) throws SQLException {
+		checkOpen();
+		return delegate.nativeSQL(sql);
+	}
+
+	@Override
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		checkOpen();
+		delegate.setAutoCommit(autoCommit);
+		autoCommitDirty = autoCommit != pooledConnection.isDefaultAutoCommit();
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException {
+		checkOpen();
+		return delegate.getAutoCommit();
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		checkOpen();
+		delegate.commit();
+		transactionDirty = false;
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		checkOpen();
+		delegate.rollback();
+		transactionDirty = false;
+	}
+
+	@Override
+	public void rollback(Savepoint savepoint) throws SQLException {
+		checkOpen();
+		delegate.rollback(savepoint);
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		checkOpen();
+		return delegate.getMetaData();
+	}
+
+	@Override
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		checkOpen();
+		delegate.setReadOnly(readOnly);
+		readOnlyDirty = readOnly != pooledConnection.isDefaultReadOnly();
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException {
+		checkOpen();
+		return delegate.isReadOnly();
+	}
+
+	@Override
+	public void setCatalog(String catalog) throws SQLException {
+		checkOpen();
+		delegate.setCatalog(catalog);
+	}
+
+	@Override
+	public String getCatalog() throws SQLException {
+		checkOpen();
+		return delegate.getCatalog();
+	}
+
+	@Override
+	public void setTransactionIsolation(int level) throws SQLException {
+		checkOpen();
+		delegate.setTransactionIsolation(level);
+		isolationDirty = level != pooledConnection.getDefaultTransactionIsolation();
+	}
+
+	@Override
+	public int getTransactionIsolation() throws SQLException {
+		checkOpen();
+		return delegate.getTransactionIsolation();
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		checkOpen();
+		return delegate.getWarnings();
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		checkOpen();
+		delegate.clearWarnings();
+	}
+
+	@Override
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		checkOpen();
+		return delegate.getTypeMap();
+	}
+
+	@Override
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		checkOpen();
+		delegate.setTypeMap(map);
+	}
+
+	@Override
+	public void setHoldability(int holdability) throws SQLException {
+		checkOpen();
+		delegate.setHoldability(holdability);
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		checkOpen();
+		return delegate.getHoldability();
+	}
+
+	@Override
+	public Savepoint setSavepoint() throws SQLException {
+		checkOpen();
+		return delegate.setSavepoint();
+	}
+
+	@Override
+	public Savepoint setSavepoint(String name) throws SQLException {
+		checkOpen();
+		return delegate.setSavepoint(name);
+	}
+
+	@Override
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		checkOpen();
+		delegate.releaseSavepoint(savepoint);
+	}
+
+	@Override
+	public Clob createClob() throws SQLException {
+		checkOpen();
+		return delegate.createClob();
+	}
+
+	@Override
+	public Blob createBlob() throws SQLException {
+		checkOpen();
+		return delegate.createBlob();
+	}
+
+	@Override
+	public NClob createNClob() throws SQLException {
+		checkOpen();
+		return delegate.createNClob();
+	}
+
+	@Override
+	public SQLXML createSQLXML() throws SQLException {
+		checkOpen();
+		return delegate.createSQLXML();
+	}
+
+	@Override
+	public boolean isValid(int timeout) throws SQLException {
+		return !closed && delegate.isValid(timeout);
+	}
+
+	@Override
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		delegate.setClientInfo(name, value);
+	}
+
+	@Override
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		delegate.setClientInfo(properties);
+	}
+
+	@Override
+	public String getClientInfo(String name) throws SQLException {
+		checkOpen();
+		return delegate.getClientInfo(name);
+	}
+
+	@Override
+	public Properties getClientInfo() throws SQLException {
+		checkOpen();
+		return delegate.getClientInfo();
+	}
+
+	@Override
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		checkOpen();
+		return delegate.createArrayOf(typeName, elements);
+	}
+
+	@Override
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		checkOpen();
+		return delegate.createStruct(typeName, attributes);
+	}
+
+	@Override
+	public void setSchema(String schema) throws SQLException {
+		checkOpen();
+		delegate.setSchema(schema);
+	}
+
+	@Override
+	public String getSchema() throws SQLException {
+		checkOpen();
+		return delegate.getSchema();
+	}
+
+	/**
+	 * 物理连接被中止后不能再复用，归还时由连接池退役
+	 */
+	@Override
+	public void abort(Executor executor) throws SQLException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		pooledConnection.markEvicted();
+		try {
+			delegate.abort(executor);
+		} finally {
+			pooledConnection.close();
+		}
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		checkOpen();
+		delegate.setNetworkTimeout(executor, milliseconds);
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException {
+		checkOpen();
+		return delegate.getNetworkTimeout();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		if (iface.isInstance(delegate)) {
+			return iface.cast(delegate);
+		}
+		return delegate.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+	}
+
+}
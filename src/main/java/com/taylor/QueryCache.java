@@ -0,0 +1,815 @@
+package com.taylor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @ClassName: QueryCache
+ * @Function: 查询结果缓存，以SQL和绑定参数为键，缓存独立于连接的行副本(Row)，命中时不借连接、不访问连接池
+ *            条目数超过maxEntries时按取样的近似LRU淘汰，命中不加锁，每个条目有各自的过期时间；
+ *            每个条目带表标签(默认从SQL的FROM列表和JOIN中解析，解析不出的查询不缓存)，经update()、BatchWriter或invalidate()写表后，带该标签的条目全部失效；
+ *            写语句的表名解析不出或写了多张表时清空全部缓存
+ *            未命中时相同的查询只执行一次：一个查询执行期间，后到的相同查询不借连接，等待并共享它的结果，
+ *            连接需求只与不同查询的数量有关，与并发调用方的数量无关
+ * @author Taylor
+ */
+public class QueryCache {
+
+	/**
+	 * 超过此行数的结果不缓存
+	 */
+	public static final int DEFAULT_MAX_ROWS_PER_ENTRY = 1000;
+
+	/**
+	 * 表名后出现时不是别名的词，遇到即表列表结束
+	 */
+	private static final Set<String> NOT_ALIAS = new HashSet<>(Arrays.asList("where", "join", "inner", "left", "right",
+			"full", "outer", "cross", "natural", "straight_join", "on", "using", "group", "order", "having", "limit",
+			"offset", "union", "except", "intersect", "minus", "for", "lock", "window", "fetch", "into", "use", "force",
+			"ignore", "partition", "select", "set", "values", "returning"));
+
+	/**
+	 * 写语句中表名之前可以出现的修饰词
+	 */
+	private static final Set<String> WRITE_MODIFIERS = new HashSet<>(Arrays.asList("low_priority", "high_priority",
+			"delayed", "quick", "ignore", "only"));
+
+	/**
+	 * UPDATE/DELETE的表名(及别名)之后可以出现的词，出现其他词(如逗号、JOIN、USING)说明写了多张表
+	 */
+	private static final Set<String> SINGLE_TABLE_END = new HashSet<>(Arrays.asList("set", "where", "order", "limit",
+			"returning", ";"));
+
+	private final IMyPool pool;
+
+	private final int maxEntries;
+
+	private final long defaultTtlNanos;
+
+	private volatile int maxRowsPerEntry = DEFAULT_MAX_ROWS_PER_ENTRY;
+
+	/**
+	 * 淘汰时每次比较的条目数
+	 */
+	private static final int EVICTION_SAMPLES = 8;
+
+	/**
+	 * 命中时最多每隔这么久更新一次条目的访问时间，热点条目不必每次命中都写
+	 */
+	private static final long ACCESS_GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * 命中只读此Map，不加锁；条目数超过maxEntries时按近似LRU淘汰，见evict()
+	 */
+	private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * 淘汰时从上次停下的位置继续取样，依次扫过所有条目；由evictionLock保护
+	 */
+	private Iterator<Entry> evictionCursor;
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * 每张表的版本号，写表时加一；条目记录装载前读到的版本，版本变化的条目即失效。
+	 * 装载期间发生的写入同样会使装载结果失效，不会把旧数据放进缓存
+	 */
+	private final ConcurrentHashMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+
+	/**
+	 * invalidateAll()时加一，所有条目都记录它
+	 */
+	private final AtomicLong allVersion = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder invalidations = new LongAdder();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	private final LongAdder uncacheable = new LongAdder();
+
+	/**
+	 * 执行中的查询，后到的相同查询等待它的结果
+	 */
+	private final ConcurrentHashMap<Key, Flight> inFlight = new ConcurrentHashMap<>();
+
+	private volatile boolean coalescing = true;
+
+	/**
+	 * @param pool
+	 * @param maxEntries
+	 *            最多缓存的查询数
+	 * @param defaultTtl
+	 *            未单独指定时条目的有效期
+	 * @param unit
+	 */
+	public QueryCache(IMyPool pool, int maxEntries, long defaultTtl, TimeUnit unit) {
+		if (maxEntries <= 0 || defaultTtl <= 0) {
+			throw new IllegalArgumentException("maxEntries和defaultTtl必须大于0");
+		}
+		this.pool = pool;
+		this.maxEntries = maxEntries;
+		this.defaultTtlNanos = unit.toNanos(defaultTtl);
+	}
+
+	/**
+	 * @desc query(按默认有效期查询，表标签从SQL中解析)
+	 * @param sql
+	 * @param params
+	 * @author taylor
+	 */
+	public List<Row> query(String sql, Object... params) throws SQLException {
+		return query(sql, params, null, defaultTtlNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @desc query(查询，命中且未过期、未失效时直接返回缓存的行，否则借连接查询并缓存结果；返回的列表不可修改，可在线程间共享)
+	 * @param sql
+	 * @param params
+	 *            按顺序绑定到SQL中的?
+	 * @param tables
+	 *            本查询读取的表，写这些表时条目失效；为null时从SQL的FROM列表和JOIN中解析，解析不出时本次查询不缓存
+	 * @param ttl
+	 *            本条目的有效期
+	 * @param unit
+	 * @author taylor
+	 */
+	public List<Row> query(String sql, Object[] params, String[] tables, long ttl, TimeUnit unit)
+			throws SQLException {
+		Key key = new Key(sql, params);
+		long now = System.nanoTime();
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			if (entry.isValid(now)) {
+				if (now - entry.lastAccess > ACCESS_GRANULARITY_NANOS) {
+					entry.lastAccess = now;
+				}
+				hits.increment();
+				return entry.rows;
+			}
+			entries.remove(key, entry);
+		}
+		misses.increment();
+		String[] tags = tables == null || tables.length == 0 ? readTables(sql) : normalize(tables);
+		if (tags == null) {
+			uncacheable.increment();
+			return execute(key);
+		}
+		return load(key, tags, unit.toNanos(ttl));
+	}
+
+	/**
+	 * @desc load(借连接执行查询并缓存结果，先记下表版本再查询；已有相同的查询在执行且其后没有写过相关的表时等待它的结果)
+	 * @author taylor
+	 */
+	private List<Row> load(Key key, String[] tags, long ttlNanos) throws SQLException {
+		AtomicLong[] versions = new AtomicLong[tags.length + 1];
+		versions[0] = allVersion;
+		for (int i = 0; i < tags.length; i++) {
+			versions[i + 1] = version(tags[i]);
+		}
+		Flight flight = new Flight(new TableVersions(versions));
+		if (coalescing) {
+			while (true) {
+				Flight running = inFlight.putIfAbsent(key, flight);
+				if (running == null) {
+					break;
+				}
+				/**
+				 * 开始于写表之前的查询结果可能已过时，不能共享，由本次查询替代它
+				 */
+				if (running.versions.isCurrent()) {
+					coalesced.increment();
+					return running.await();
+				}
+				if (inFlight.replace(key, running, flight)) {
+					break;
+				}
+			}
+		}
+		try {
+			List<Row> rows = execute(key);
+			flight.result.complete(rows);
+			if (rows.size() <= maxRowsPerEntry) {
+				long now = System.nanoTime();
+				Entry entry = new Entry(key, rows, now, now + ttlNanos, flight.versions);
+				if (entry.isValid(now)) {
+					entries.put(key, entry);
+					if (entries.size() > maxEntries) {
+						evict();
+					}
+				}
+			}
+			return rows;
+		} catch (SQLException | RuntimeException | Error e) {
+			flight.result.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+
+	private List<Row> execute(Key key) throws SQLException {
+		PooledConnection cnn = pool.getConnection();
+		try {
+			return Collections.unmodifiableList(cnn.queryRows(key.sql, key.params));
+		} finally {
+			cnn.close();
+		}
+	}
+
+	/**
+	 * @desc evict(淘汰到不超过maxEntries：每次取EVICTION_SAMPLES个条目，已过期或失效的直接移除，否则移除其中最久未访问的一个)
+	 * @author taylor
+	 */
+	private void evict() {
+		evictionLock.lock();
+		try {
+			while (entries.size() > maxEntries) {
+				long now = System.nanoTime();
+				Entry oldest = null;
+				for (int i = 0; i < EVICTION_SAMPLES; i++) {
+					if (evictionCursor == null || !evictionCursor.hasNext()) {
+						evictionCursor = entries.values().iterator();
+						if (!evictionCursor.hasNext()) {
+							break;
+						}
+					}
+					Entry entry = evictionCursor.next();
+					if (!entry.isValid(now)) {
+						entries.remove(entry.key, entry);
+					} else if (oldest == null || entry.lastAccess - oldest.lastAccess < 0) {
+						oldest = entry;
+					}
+				}
+				if (oldest != null && entries.size() > maxEntries && entries.remove(oldest.key, oldest)) {
+					evictions.increment();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @desc update(借连接执行写语句，成功后使所写表的缓存失效)
+	 * @param sql
+	 * @param params
+	 * @return 更新数
+	 * @author taylor
+	 */
+	public int update(String sql, Object... params) throws SQLException {
+		PooledConnection cnn = pool.getConnection();
+		try {
+			boolean cached = cnn.getMyPool().getStatementCacheSize() > 0;
+			PreparedStatement statement = cached ? cnn.prepare(sql) : cnn.getConnection().prepareStatement(sql);
+			try {
+				if (params != null) {
+					for (int i = 0; i < params.length; i++) {
+						statement.setObject(i + 1, params[i]);
+					}
+				}
+				return statement.executeUpdate();
+			} finally {
+				if (!cached) {
+					statement.close();
+				}
+				onWrite(sql);
+			}
+		} finally {
+			cnn.close();
+		}
+	}
+
+	/**
+	 * @desc onWrite(使写语句所写的表的缓存失效，表名解析不出时清空全部缓存)
+	 * @param sql
+	 * @author taylor
+	 */
+	public void onWrite(String sql) {
+		String table = writeTable(sql);
+		if (table != null) {
+			invalidate(table);
+		} else {
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * @desc writeTable(解析INSERT/REPLACE/UPDATE/DELETE/TRUNCATE所写的表，注释和引号的处理与readTables相同；
+	 *       写多张表或无法识别的写法返回null)
+	 * @author taylor
+	 */
+	static String writeTable(String sql) {
+		List<String> tokens = tokenize(sql);
+		if (tokens == null || tokens.isEmpty()) {
+			return null;
+		}
+		String verb = tokens.get(0);
+		int i = 1;
+		while (i < tokens.size() && WRITE_MODIFIERS.contains(tokens.get(i))) {
+			i++;
+		}
+		boolean single;
+		if ("insert".equals(verb) || "replace".equals(verb)) {
+			if (i < tokens.size() && "into".equals(tokens.get(i))) {
+				i++;
+			}
+			single = false;
+		} else if ("delete".equals(verb)) {
+			if (i >= tokens.size() || !"from".equals(tokens.get(i))) {
+				return null;
+			}
+			i++;
+			single = true;
+		} else if ("update".equals(verb)) {
+			single = true;
+		} else if ("truncate".equals(verb)) {
+			if (i < tokens.size() && "table".equals(tokens.get(i))) {
+				i++;
+			}
+			single = false;
+		} else {
+			return null;
+		}
+		if (i >= tokens.size() || !isIdentifier(tokens.get(i))) {
+			return null;
+		}
+		String table = tokens.get(i++);
+		if (single) {
+			if (i < tokens.size() && "as".equals(tokens.get(i))) {
+				i++;
+			}
+			if (i < tokens.size() && isIdentifier(tokens.get(i))) {
+				i++;
+			}
+			if (i < tokens.size() && !SINGLE_TABLE_END.contains(tokens.get(i))) {
+				return null;
+			}
+		}
+		return normalize(table);
+	}
+
+	/**
+	 * @desc invalidate(使读过这些表的缓存条目失效，条目在下次访问或被淘汰时移除)
+	 * @param tables
+	 * @author taylor
+	 */
+	public void invalidate(String... tables) {
+		for (String table : normalize(tables)) {
+			version(table).incrementAndGet();
+			invalidations.increment();
+		}
+	}
+
+	public void invalidateAll() {
+		allVersion.incrementAndGet();
+		invalidations.increment();
+		entries.clear();
+	}
+
+	private AtomicLong version(String table) {
+		AtomicLong version = tableVersions.get(table);
+		if (version == null) {
+			AtomicLong created = new AtomicLong();
+			version = tableVersions.putIfAbsent(table, created);
+			if (version == null) {
+				version = created;
+			}
+		}
+		return version;
+	}
+
+	/**
+	 * @desc readTables(解析查询读取的表：每个FROM后逗号分隔的表列表(含别名)、每个JOIN的表及其ON/USING条件后的逗号表，
+	 *       子查询中的FROM同样解析；遇到解析不了的写法返回null，这样的查询不缓存也不合并，以免漏掉某张表的写入而返回旧数据)
+	 * @author taylor
+	 */
+	static String[] readTables(String sql) {
+		List<String> tokens = tokenize(sql);
+		if (tokens == null) {
+			return null;
+		}
+		Set<String> tables = new LinkedHashSet<>();
+		for (int i = 0; i < tokens.size(); i++) {
+			String token = tokens.get(i);
+			if (("from".equals(token) || "join".equals(token)) && !readTableList(tokens, i + 1, tables)) {
+				return null;
+			}
+		}
+		return tables.toArray(new String[tables.size()]);
+	}
+
+	/**
+	 * @desc readTableList(从start开始读一个逗号分隔的表列表，派生表(子查询)跳过，其中的FROM由readTables另行解析)
+	 * @return 格式无法识别时返回false
+	 * @author taylor
+	 */
+	private static boolean readTableList(List<String> tokens, int start, Set<String> tables) {
+		int i = start;
+		while (true) {
+			if (i >= tokens.size()) {
+				return false;
+			}
+			String token = tokens.get(i);
+			if ("(".equals(token)) {
+				i = skipParentheses(tokens, i);
+				if (i < 0) {
+					return false;
+				}
+			} else if (isIdentifier(token)) {
+				tables.add(normalize(token));
+				i++;
+			} else {
+				return false;
+			}
+			/**
+			 * 别名
+			 */
+			if (i < tokens.size() && "as".equals(tokens.get(i))) {
+				i++;
+				if (i >= tokens.size() || !isIdentifier(tokens.get(i))) {
+					return false;
+				}
+				i++;
+			} else if (i < tokens.size() && isIdentifier(tokens.get(i))) {
+				i++;
+			}
+			/**
+			 * JOIN的连接条件，其后还可能有逗号分隔的表
+			 */
+			if (i < tokens.size() && ("on".equals(tokens.get(i)) || "using".equals(tokens.get(i)))) {
+				i = skipCondition(tokens, i + 1);
+				if (i < 0) {
+					return false;
+				}
+			}
+			if (i < tokens.size() && ",".equals(tokens.get(i))) {
+				i++;
+				continue;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return 与start处左括号匹配的右括号之后的位置，不匹配时返回-1
+	 */
+	private static int skipParentheses(List<String> tokens, int start) {
+		int depth = 0;
+		for (int i = start; i < tokens.size(); i++) {
+			String token = tokens.get(i);
+			if ("(".equals(token)) {
+				depth++;
+			} else if (")".equals(token) && --depth == 0) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return 条件之后的位置：括号外的逗号、右括号、分号或子句关键字处
+	 */
+	private static int skipCondition(List<String> tokens, int start) {
+		int i = start;
+		while (i < tokens.size()) {
+			String token = tokens.get(i);
+			if ("(".equals(token)) {
+				i = skipParentheses(tokens, i);
+				if (i < 0) {
+					return -1;
+				}
+				continue;
+			}
+			if (",".equals(token) || ")".equals(token) || ";".equals(token)
+					|| (NOT_ALIAS.contains(token) && !"on".equals(token) && !"using".equals(token))) {
+				return i;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isIdentifier(String token) {
+		char c = token.charAt(0);
+		if (c == '`' || c == '"' || c == '[') {
+			return true;
+		}
+		return (Character.isLetter(c) || c == '_' || c == '$') && !"as".equals(token) && !NOT_ALIAS.contains(token);
+	}
+
+	/**
+	 * @desc tokenize(把SQL切分为词：标识符(含库名前缀，不带引号的转小写)和单个符号；字符串常量记为一个'，注释丢弃)
+	 * @return 引号或注释未闭合时返回null
+	 * @author taylor
+	 */
+	private static List<String> tokenize(String sql) {
+		List<String> tokens = new ArrayList<>();
+		int n = sql.length();
+		int i = 0;
+		while (i < n) {
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '#' || (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-')) {
+				while (i < n && sql.charAt(i) != '\n') {
+					i++;
+				}
+			} else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+				int end = sql.indexOf("*/", i + 2);
+				if (end < 0) {
+					return null;
+				}
+				i = end + 2;
+			} else if (c == '\'') {
+				i = skipQuoted(sql, i, '\'');
+				if (i < 0) {
+					return null;
+				}
+				tokens.add("'");
+			} else if (c == '`' || c == '"' || c == '[' || c == '_' || c == '$' || Character.isLetterOrDigit(c)) {
+				int start = i;
+				boolean quoted = false;
+				while (true) {
+					char q = sql.charAt(i);
+					if (q == '`' || q == '"' || q == '[') {
+						quoted = true;
+						i = skipQuoted(sql, i, q == '[' ? ']' : q);
+						if (i < 0) {
+							return null;
+						}
+					} else {
+						while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_'
+								|| sql.charAt(i) == '$')) {
+							i++;
+						}
+					}
+					if (i + 1 < n && sql.charAt(i) == '.') {
+						i++;
+						continue;
+					}
+					break;
+				}
+				String word = sql.substring(start, i);
+				tokens.add(quoted ? word : word.toLowerCase());
+			} else {
+				tokens.add(String.valueOf(c));
+				i++;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * @return 结束引号之后的位置，引号内连续两个引号视为转义，字符串常量内的反斜杠也是转义；未闭合时返回-1
+	 */
+	private static int skipQuoted(String sql, int start, char close) {
+		for (int i = start + 1; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (c == '\\' && close == '\'') {
+				i++;
+			} else if (c == close) {
+				if (close != ']' && i + 1 < sql.length() && sql.charAt(i + 1) == close) {
+					i++;
+				} else {
+					return i + 1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static String[] normalize(String[] tables) {
+		String[] normalized = new String[tables.length];
+		for (int i = 0; i < tables.length; i++) {
+			normalized[i] = normalize(tables[i]);
+		}
+		return normalized;
+	}
+
+	/**
+	 * 去掉引号和库名并转为小写
+	 */
+	private static String normalize(String table) {
+		String name = table.replaceAll("[`\"\\[\\]]", "");
+		int dot = name.lastIndexOf('.');
+		return (dot >= 0 ? name.substring(dot + 1) : name).toLowerCase();
+	}
+
+	public void setMaxRowsPerEntry(int maxRowsPerEntry) {
+		this.maxRowsPerEntry = maxRowsPerEntry;
+	}
+
+	public int getMaxRowsPerEntry() {
+		return maxRowsPerEntry;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * 等待并共享了其他线程查询结果的次数
+	 */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * 因读取的表解析不出而未缓存的查询次数，这样的查询可用query(sql, params, tables, ttl, unit)指定所读的表
+	 */
+	public long getUncacheableCount() {
+		return uncacheable.sum();
+	}
+
+	/**
+	 * @desc setCoalescing(是否合并并发的相同查询，默认开启)
+	 * @param coalescing
+	 * @author taylor
+	 */
+	public void setCoalescing(boolean coalescing) {
+		this.coalescing = coalescing;
+	}
+
+	public boolean isCoalescing() {
+		return coalescing;
+	}
+
+	/**
+	 * @ClassName: Key
+	 * @Function: SQL文本加绑定参数
+	 */
+	static final class Key {
+
+		final String sql;
+
+		final Object[] params;
+
+		private final int hash;
+
+		Key(String sql, Object[] params) {
+			this.sql = sql;
+			this.params = params == null ? new Object[0] : params.clone();
+			this.hash = 31 * sql.hashCode() + Arrays.hashCode(this.params);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && sql.equals(other.sql) && Arrays.equals(params, other.params);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * @ClassName: TableVersions
+	 * @Function: 查询开始前读到的各表版本
+	 */
+	private static final class TableVersions {
+
+		private final AtomicLong[] versions;
+
+		private final long[] seen;
+
+		TableVersions(AtomicLong[] versions) {
+			this.versions = versions;
+			this.seen = new long[versions.length];
+			for (int i = 0; i < versions.length; i++) {
+				seen[i] = versions[i].get();
+			}
+		}
+
+		/**
+		 * 之后没有写过这些表
+		 */
+		boolean isCurrent() {
+			for (int i = 0; i < versions.length; i++) {
+				if (versions[i].get() != seen[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @ClassName: Entry
+	 * @Function: 缓存的结果，带过期时间、最近访问时间和装载前读到的表版本
+	 */
+	private static final class Entry {
+
+		private final Key key;
+
+		private final List<Row> rows;
+
+		/**
+		 * 只用于淘汰时比较先后，不要求精确
+		 */
+		private volatile long lastAccess;
+
+		private final long expiresAt;
+
+		private final TableVersions versions;
+
+		Entry(Key key, List<Row> rows, long now, long expiresAt, TableVersions versions) {
+			this.key = key;
+			this.rows = rows;
+			this.lastAccess = now;
+			this.expiresAt = expiresAt;
+			this.versions = versions;
+		}
+
+		boolean isValid(long now) {
+			return now - expiresAt < 0 && versions.isCurrent();
+		}
+	}
+
+	/**
+	 * @ClassName: Flight
+	 * @Function: 执行中的查询，结果由执行它的线程完成
+	 */
+	private static final class Flight {
+
+		private final TableVersions versions;
+
+		private final CompletableFuture<List<Row>> result = new CompletableFuture<>();
+
+		Flight(TableVersions versions) {
+			this.versions = versions;
+		}
+
+		/**
+		 * 查询失败时抛出包装了原异常的新异常，保留等待方自己的调用栈
+		 */
+		List<Row> await() throws SQLException {
+			try {
+				return result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("等待相同查询的结果时被中断", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof SQLException) {
+					SQLException failure = (SQLException) cause;
+					throw new SQLException(failure.getMessage(), failure.getSQLState(), failure.getErrorCode(), failure);
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new SQLException(cause);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package com.taylor;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.util.Date;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @ClassName: Row
+ * @Function: 结果集中一行数据的独立副本，不引用ResultSet和连接，连接归还后仍可使用
+ *            同一结果的各行共享列信息，每行只多一个值数组；列序号与JDBC一致从1开始，列名不区分大小写
+ *            Blob/Clob/SQLXML/Array读取时即转为byte[]/String/数组；byte[]、数组和日期等可变值读取时和取出时都复制，可跨线程共享
+ * @author Taylor
+ */
+public final class Row {
+
+	private final Columns columns;
+
+	private final Object[] values;
+
+	Row(Columns columns, Object[] values) {
+		this.columns = columns;
+		this.values = values;
+	}
+
+	/**
+	 * @desc read(复制结果集当前行)
+	 * @param rs
+	 * @param columns
+	 *            由Columns.of(rs.getMetaData())得到，同一结果集的各行共用
+	 * @author taylor
+	 */
+	static Row read(ResultSet rs, Columns columns) throws SQLException {
+		Object[] values = new Object[columns.labels.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = detach(rs.getObject(i + 1));
+		}
+		return new Row(columns, values);
+	}
+
+	/**
+	 * @desc detach(把驱动返回的值转为不依赖连接的副本：LOB读出内容后释放)
+	 * @author taylor
+	 */
+	private static Object detach(Object value) throws SQLException {
+		if (value instanceof Blob) {
+			Blob blob = (Blob) value;
+			try {
+				return blob.getBytes(1, (int) blob.length());
+			} finally {
+				blob.free();
+			}
+		}
+		if (value instanceof Clob) {
+			Clob clob = (Clob) value;
+			try {
+				return clob.getSubString(1, (int) clob.length());
+			} finally {
+				clob.free();
+			}
+		}
+		if (value instanceof SQLXML) {
+			SQLXML xml = (SQLXML) value;
+			try {
+				return xml.getString();
+			} finally {
+				xml.free();
+			}
+		}
+		if (value instanceof Array) {
+			Array array = (Array) value;
+			try {
+				return copy(array.getArray());
+			} finally {
+				array.free();
+			}
+		}
+		return copy(value);
+	}
+
+	/**
+	 * @desc copy(复制可变值：byte[]、数组和java.util.Date及其子类，不可变值原样返回)
+	 * @author taylor
+	 */
+	private static Object copy(Object value) {
+		if (value instanceof byte[]) {
+			return ((byte[]) value).clone();
+		}
+		if (value instanceof Date) {
+			return ((Date) value).clone();
+		}
+		if (value instanceof Object[]) {
+			Object[] array = ((Object[]) value).clone();
+			for (int i = 0; i < array.length; i++) {
+				array[i] = copy(array[i]);
+			}
+			return array;
+		}
+		if (value != null && value.getClass().isArray()) {
+			int length = java.lang.reflect.Array.getLength(value);
+			Object array = java.lang.reflect.Array.newInstance(value.getClass().getComponentType(), length);
+			System.arraycopy(value, 0, array, 0, length);
+			return array;
+		}
+		return value;
+	}
+
+	public int getColumnCount() {
+		return values.length;
+	}
+
+	public String getColumnLabel(int column) {
+		return columns.labels[column - 1];
+	}
+
+	/**
+	 * @desc getObject(可变值返回副本，修改不影响本行)
+	 * @author taylor
+	 */
+	public Object getObject(int column) {
+		return copy(values[column - 1]);
+	}
+
+	public Object getObject(String label) {
+		return copy(values[columns.indexOf(label)]);
+	}
+
+	public String getString(int column) {
+		Object value = values[column - 1];
+		return value == null ? null : value.toString();
+	}
+
+	public String getString(String label) {
+		return getString(columns.indexOf(label) + 1);
+	}
+
+	/**
+	 * @desc getInt(与ResultSet.getInt相同，NULL返回0)
+	 * @author taylor
+	 */
+	public int getInt(int column) {
+		Object value = values[column - 1];
+		if (value == null) {
+			return 0;
+		}
+		return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+	}
+
+	public int getInt(String label) {
+		return getInt(columns.indexOf(label) + 1);
+	}
+
+	/**
+	 * @desc getLong(与ResultSet.getLong相同，NULL返回0)
+	 * @author taylor
+	 */
+	public long getLong(int column) {
+		Object value = values[column - 1];
+		if (value == null) {
+			return 0;
+		}
+		return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+	}
+
+	public long getLong(String label) {
+		return getLong(columns.indexOf(label) + 1);
+	}
+
+	/**
+	 * @desc toMap(按列顺序转为列名到值的Map)
+	 * @author taylor
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		for (int i = 0; i < values.length; i++) {
+			map.put(columns.labels[i], copy(values[i]));
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Row)) {
+			return false;
+		}
+		Row other = (Row) obj;
+		return Arrays.equals(columns.labels, other.columns.labels) && Arrays.deepEquals(values, other.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.deepHashCode(values);
+	}
+
+	/**
+	 * @ClassName: Columns
+	 * @Function: 一个结果集的列名，供其各行共享
+	 */
+	static final class Columns {
+
+		private final String[] labels;
+
+		private final Map<String, Integer> indexes;
+
+		private Columns(String[] labels) {
+			this.labels = labels;
+			this.indexes = new HashMap<>(labels.length * 2);
+			for (int i = labels.length - 1; i >= 0; i--) {
+				indexes.put(labels[i].toLowerCase(), i);
+			}
+		}
+
+		static Columns of(ResultSetMetaData metaData) throws SQLException {
+			String[] labels = new String[metaData.getColumnCount()];
+			for (int i = 0; i < labels.length; i++) {
+				labels[i] = metaData.getColumnLabel(i + 1);
+			}
+			return new Columns(labels);
+		}
+
+		int indexOf(String label) {
+			Integer index = indexes.get(label.toLowerCase());
+			if (index == null) {
+				throw new IllegalArgumentException("列不存在:" + label);
+			}
+			return index;
+		}
+	}
+
+}
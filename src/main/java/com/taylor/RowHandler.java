@@ -0,0 +1,20 @@
+package com.taylor;
+
+import java.sql.SQLException;
+
+/**
+ * @ClassName: RowHandler
+ * @Function: 流式查询的逐行回调，见PooledConnection.stream()和MyPool.stream()
+ * @author Taylor
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+	/**
+	 * @desc handle(处理一行，抛出异常时查询中止)
+	 * @param row
+	 * @author taylor
+	 */
+	void handle(Row row) throws SQLException;
+
+}
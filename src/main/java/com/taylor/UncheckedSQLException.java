@@ -0,0 +1,23 @@
+package com.taylor;
+
+import java.sql.SQLException;
+
+/**
+ * @ClassName: UncheckedSQLException
+ * @Function: 包装不能抛出受检异常处(如Stream遍历中)发生的SQLException
+ * @author Taylor
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedSQLException(SQLException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	@Override
+	public synchronized SQLException getCause() {
+		return (SQLException) super.getCause();
+	}
+
+}
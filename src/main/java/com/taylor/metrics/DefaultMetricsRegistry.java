@@ -0,0 +1,30 @@
+package com.taylor.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ClassName: DefaultMetricsRegistry
+ * @Function: 使用内置PoolMetrics的注册中心，按连接池名称查询指标
+ * @author Taylor
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+
+	private final Map<String, PoolMetrics> metrics = new ConcurrentHashMap<>();
+
+	@Override
+	public MetricsTracker createTracker(String poolName, PoolStats poolStats) {
+		PoolMetrics poolMetrics = new PoolMetrics(poolName, poolStats);
+		metrics.put(poolName, poolMetrics);
+		return poolMetrics;
+	}
+
+	public PoolMetrics getMetrics(String poolName) {
+		return metrics.get(poolName);
+	}
+
+	public Map<String, PoolMetrics> getAllMetrics() {
+		return metrics;
+	}
+
+}
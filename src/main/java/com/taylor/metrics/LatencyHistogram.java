@@ -0,0 +1,154 @@
+package com.taylor.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @ClassName: LatencyHistogram
+ * @Function: 低开销的并发直方图，按2的幂分段、每段再分4个子桶(误差不超过25%)，计数使用分散竞争的LongAdder，
+ *            记录一次只需几次位运算和一次无竞争的累加
+ * @author Taylor
+ */
+public class LatencyHistogram {
+
+	/**
+	 * 每个2的幂区间的子桶位数
+	 */
+	private static final int SUB_BUCKET_BITS = 2;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @desc record(记录一个非负的值，如纳秒耗时)
+	 * @param value
+	 * @author taylor
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[bucketIndex(value)].increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * 桶内最大值，百分位按桶上界估算
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		long upper = ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+		return upper < 0 ? Long.MAX_VALUE : upper;
+	}
+
+	/**
+	 * @desc snapshot(取当前数据的快照，不影响并发记录)
+	 * @author taylor
+	 */
+	public Snapshot snapshot() {
+		long[] bucketCounts = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			bucketCounts[i] = counts[i].sum();
+			count += bucketCounts[i];
+		}
+		return new Snapshot(bucketCounts, count, sum.sum(), max.get());
+	}
+
+	public void reset() {
+		for (LongAdder count : counts) {
+			count.reset();
+		}
+		sum.reset();
+		max.reset();
+	}
+
+	/**
+	 * @ClassName: Snapshot
+	 * @Function: 直方图快照
+	 */
+	public static class Snapshot {
+
+		private final long[] bucketCounts;
+
+		private final long count;
+
+		private final long sum;
+
+		private final long max;
+
+		Snapshot(long[] bucketCounts, long count, long sum, long max) {
+			this.bucketCounts = bucketCounts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @desc getPercentile(估算百分位值)
+		 * @param percentile
+		 *            0到100之间
+		 * @author taylor
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0);
+			long seen = 0;
+			for (int i = 0; i < bucketCounts.length; i++) {
+				seen += bucketCounts[i];
+				if (seen >= rank && bucketCounts[i] > 0) {
+					return Math.min(bucketUpperBound(i), max);
+				}
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + (long) getMean() + ", p50=" + getPercentile(50) + ", p99="
+					+ getPercentile(99) + ", p999=" + getPercentile(99.9) + ", max=" + max;
+		}
+	}
+
+}
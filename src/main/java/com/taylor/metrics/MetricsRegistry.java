@@ -0,0 +1,20 @@
+package com.taylor.metrics;
+
+/**
+ * @ClassName: MetricsRegistry
+ * @Function: 指标注册中心，连接池启动时向其登记并取得自己的MetricsTracker，可对接外部监控系统
+ * @author Taylor
+ */
+public interface MetricsRegistry {
+
+	/**
+	 * @desc createTracker(为连接池创建指标记录器)
+	 * @param poolName
+	 *            连接池名称
+	 * @param poolStats
+	 *            连接池实时计数
+	 * @author taylor
+	 */
+	public MetricsTracker createTracker(String poolName, PoolStats poolStats);
+
+}
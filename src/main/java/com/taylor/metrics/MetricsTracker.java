@@ -0,0 +1,37 @@
+package com.taylor.metrics;
+
+/**
+ * @ClassName: MetricsTracker
+ * @Function: 连接池在借出、归还、建立和回收连接时回调的指标记录接口，实现必须足够轻量，不能阻塞调用线程
+ * @author Taylor
+ */
+public interface MetricsTracker {
+
+	/**
+	 * @desc recordBorrowWait(记录获取连接的耗时，包括排队等待的时间)
+	 * @param nanos
+	 * @author taylor
+	 */
+	public void recordBorrowWait(long nanos);
+
+	/**
+	 * @desc recordUsage(记录连接从借出到归还的使用时长)
+	 * @param nanos
+	 * @author taylor
+	 */
+	public void recordUsage(long nanos);
+
+	/**
+	 * @desc recordConnectionCreated(记录建立一个物理连接的耗时)
+	 * @param nanos
+	 * @author taylor
+	 */
+	public void recordConnectionCreated(long nanos);
+
+	public void recordTimeout();
+
+	public void recordEviction();
+
+	public void recordCreationFailure();
+
+}
@@ -0,0 +1,39 @@
+package com.taylor.metrics;
+
+/**
+ * @ClassName: NoopMetricsTracker
+ * @Function: 未开启指标时使用的空实现
+ * @author Taylor
+ */
+public final class NoopMetricsTracker implements MetricsTracker {
+
+	public static final NoopMetricsTracker INSTANCE = new NoopMetricsTracker();
+
+	private NoopMetricsTracker() {
+	}
+
+	@Override
+	public void recordBorrowWait(long nanos) {
+	}
+
+	@Override
+	public void recordUsage(long nanos) {
+	}
+
+	@Override
+	public void recordConnectionCreated(long nanos) {
+	}
+
+	@Override
+	public void recordTimeout() {
+	}
+
+	@Override
+	public void recordEviction() {
+	}
+
+	@Override
+	public void recordCreationFailure() {
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.taylor.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @ClassName: PoolMetrics
+ * @Function: 内置的指标记录器，耗时记录在LatencyHistogram中(纳秒)，次数使用LongAdder
+ * @author Taylor
+ */
+public class PoolMetrics implements MetricsTracker {
+
+	private final String poolName;
+
+	private final PoolStats poolStats;
+
+	private final LatencyHistogram borrowWait = new LatencyHistogram();
+
+	private final LatencyHistogram usage = new LatencyHistogram();
+
+	private final LatencyHistogram creation = new LatencyHistogram();
+
+	private final LongAdder timeouts = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder creationFailures = new LongAdder();
+
+	public PoolMetrics(String poolName, PoolStats poolStats) {
+		this.poolName = poolName;
+		this.poolStats = poolStats;
+	}
+
+	@Override
+	public void recordBorrowWait(long nanos) {
+		borrowWait.record(nanos);
+	}
+
+	@Override
+	public void recordUsage(long nanos) {
+		usage.record(nanos);
+	}
+
+	@Override
+	public void recordConnectionCreated(long nanos) {
+		creation.record(nanos);
+	}
+
+	@Override
+	public void recordTimeout() {
+		timeouts.increment();
+	}
+
+	@Override
+	public void recordEviction() {
+		evictions.increment();
+	}
+
+	@Override
+	public void recordCreationFailure() {
+		creationFailures.increment();
+	}
+
+	public String getPoolName() {
+		return poolName;
+	}
+
+	public PoolStats getPoolStats() {
+		return poolStats;
+	}
+
+	public LatencyHistogram.Snapshot getBorrowWait() {
+		return borrowWait.snapshot();
+	}
+
+	public LatencyHistogram.Snapshot getUsage() {
+		return usage.snapshot();
+	}
+
+	public LatencyHistogram.Snapshot getCreation() {
+		return creation.snapshot();
+	}
+
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getCreationFailures() {
+		return creationFailures.sum();
+	}
+
+	@Override
+	public String toString() {
+		return poolName + " [total=" + poolStats.getTotalConnections() + ", active=" + poolStats.getActiveConnections()
+				+ ", idle=" + poolStats.getIdleConnections() + ", waiting=" + poolStats.getThreadsAwaitingConnection()
+				+ "]\n  borrowWait(ns): " + getBorrowWait() + "\n  usage(ns): " + getUsage() + "\n  creation(ns): "
+				+ getCreation() + "\n  timeouts=" + getTimeouts() + ", evictions=" + getEvictions()
+				+ ", creationFailures=" + getCreationFailures();
+	}
+
+}
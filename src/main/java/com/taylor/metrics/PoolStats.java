@@ -0,0 +1,18 @@
+package com.taylor.metrics;
+
+/**
+ * @ClassName: PoolStats
+ * @Function: 连接池的实时计数，供指标注册中心以仪表(gauge)方式读取
+ * @author Taylor
+ */
+public interface PoolStats {
+
+	public int getTotalConnections();
+
+	public int getIdleConnections();
+
+	public int getActiveConnections();
+
+	public int getThreadsAwaitingConnection();
+
+}
@@ -0,0 +1,138 @@
+package com.taylor.stub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+
+/**
+ * @ClassName: StubConnection
+ * @Function: StubDriver返回的连接，以动态代理实现java.sql.Connection，只模拟连接池用到的行为
+ * @author Taylor
+ */
+class StubConnection implements InvocationHandler {
+
+	private final StubDatabase database;
+
+	/**
+	 * 建连时数据库的断连代数
+	 */
+	private final int generation;
+
+	private volatile boolean closed;
+
+	/**
+	 * 执行语句时被模拟断开
+	 */
+	private volatile boolean broken;
+
+	private boolean autoCommit = true;
+
+	private boolean readOnly;
+
+	private int transactionIsolation = Connection.TRANSACTION_REPEATABLE_READ;
+
+	StubConnection(StubDatabase database, int generation) {
+		this.database = database;
+		this.generation = generation;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		switch (name) {
+		case "close":
+		case "abort":
+			close();
+			return null;
+		case "isClosed":
+			return closed;
+		case "isValid":
+			return isAlive();
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "toString":
+			return "StubConnection[" + database.getName() + "]";
+		case "unwrap":
+			return ((Class<?>) args[0]).cast(proxy);
+		case "isWrapperFor":
+			return ((Class<?>) args[0]).isInstance(proxy);
+		default:
+			break;
+		}
+		checkAlive();
+		switch (name) {
+		case "getAutoCommit":
+			return autoCommit;
+		case "setAutoCommit":
+			autoCommit = (Boolean) args[0];
+			return null;
+		case "isReadOnly":
+			return readOnly;
+		case "setReadOnly":
+			readOnly = (Boolean) args[0];
+			return null;
+		case "getTransactionIsolation":
+			return transactionIsolation;
+		case "setTransactionIsolation":
+			transactionIsolation = (Integer) args[0];
+			return null;
+		case "commit":
+		case "rollback":
+			execute();
+			return null;
+		case "createStatement":
+		case "prepareStatement":
+		case "prepareCall":
+			return Proxy.newProxyInstance(StubConnection.class.getClassLoader(),
+					new Class<?>[] { method.getReturnType() }, new StubStatement(this, proxy));
+		default:
+			return StubStatement.defaultValue(method.getReturnType());
+		}
+	}
+
+	private synchronized void close() {
+		if (!closed) {
+			closed = true;
+			database.disconnect();
+		}
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	private boolean isAlive() {
+		return !closed && !broken && database.isAlive(generation);
+	}
+
+	void checkAlive() throws SQLException {
+		if (closed) {
+			throw new SQLException("连接已关闭");
+		}
+		if (!isAlive()) {
+			throw new SQLNonTransientConnectionException("连接已断开");
+		}
+	}
+
+	/**
+	 * @desc execute(执行一条语句，按数据库配置注入延迟、失败和断连)
+	 * @author taylor
+	 */
+	void execute() throws SQLException {
+		checkAlive();
+		if (!database.execute()) {
+			broken = true;
+			throw new SQLNonTransientConnectionException("Communications link failure");
+		}
+	}
+
+	int getRows() {
+		return database.getRows();
+	}
+
+}
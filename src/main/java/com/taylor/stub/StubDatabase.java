@@ -0,0 +1,397 @@
+package com.taylor.stub;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName: StubDatabase
+ * @Function: StubDriver背后的进程内"数据库"，按URL中的名称共享，模拟建连/查询延迟、失败、断连和连接数上限
+ *            URL参数只在首次通过该URL建连时应用一次，例如jdbc:stub:orders?connectLatency=50&queryLatency=2&connectFailureRate=0.1
+ *            运行期间可通过StubDatabase.get(名称)修改配置、切换可用状态或断开全部连接，模拟后端抖动
+ * @author Taylor
+ */
+public class StubDatabase {
+
+	private static final ConcurrentMap<String, StubDatabase> DATABASES = new ConcurrentHashMap<>();
+
+	private final String name;
+
+	/**
+	 * 建连延迟(毫秒)
+	 */
+	private volatile long connectLatency;
+
+	/**
+	 * 每条语句的执行延迟(毫秒)
+	 */
+	private volatile long queryLatency;
+
+	/**
+	 * 在延迟基础上增加的随机抖动上限(毫秒)
+	 */
+	private volatile long latencyJitter;
+
+	/**
+	 * 建连失败的概率(0~1)
+	 */
+	private volatile double connectFailureRate;
+
+	/**
+	 * 语句执行失败的概率(0~1)，失败不影响连接
+	 */
+	private volatile double queryFailureRate;
+
+	/**
+	 * 每次执行语句时连接被断开的概率(0~1)，断开后该连接不可再用
+	 */
+	private volatile double dropRate;
+
+	/**
+	 * 最大连接数，0不限制，超过时建连失败
+	 */
+	private volatile int maxConnections;
+
+	/**
+	 * 查询返回的行数
+	 */
+	private volatile int rows;
+
+	/**
+	 * 是否可用，不可用时建连失败、已有连接失效
+	 */
+	private volatile boolean available = true;
+
+	/**
+	 * URL参数是否已应用
+	 */
+	private boolean urlConfigured;
+
+	/**
+	 * 断连代数，dropConnections()后递增，创建于旧代数的连接全部失效
+	 */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private final AtomicInteger openConnections = new AtomicInteger();
+
+	private final AtomicLong connectCount = new AtomicLong();
+
+	private final AtomicLong connectFailures = new AtomicLong();
+
+	private final AtomicLong queryCount = new AtomicLong();
+
+	private final AtomicLong queryFailures = new AtomicLong();
+
+	private final AtomicLong droppedConnections = new AtomicLong();
+
+	private StubDatabase(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @desc get(按名称获取数据库，不存在时创建)
+	 * @param name
+	 * @author taylor
+	 */
+	public static StubDatabase get(String name) {
+		StubDatabase database = DATABASES.get(name);
+		if (database == null) {
+			StubDatabase created = new StubDatabase(name);
+			database = DATABASES.putIfAbsent(name, created);
+			if (database == null) {
+				database = created;
+			}
+		}
+		return database;
+	}
+
+	/**
+	 * @desc forUrl(解析jdbc:stub:名称?参数，参数只应用一次)
+	 * @param url
+	 * @author taylor
+	 */
+	static StubDatabase forUrl(String url) throws SQLException {
+		String spec = url.substring(StubDriver.URL_PREFIX.length());
+		int q = spec.indexOf('?');
+		String name = q < 0 ? spec : spec.substring(0, q);
+		if (name.isEmpty()) {
+			throw new SQLException("URL缺少数据库名称:" + url);
+		}
+		StubDatabase database = get(name);
+		if (q >= 0) {
+			synchronized (database) {
+				if (!database.urlConfigured) {
+					database.configure(spec.substring(q + 1));
+					database.urlConfigured = true;
+				}
+			}
+		}
+		return database;
+	}
+
+	/**
+	 * @desc remove(移除数据库，已有连接不受影响，下次按名称获取时重新创建)
+	 * @param name
+	 * @author taylor
+	 */
+	public static void remove(String name) {
+		DATABASES.remove(name);
+	}
+
+	private void configure(String query) throws SQLException {
+		for (String pair : query.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int eq = pair.indexOf('=');
+			String key = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			try {
+				switch (key) {
+				case "connectLatency":
+					connectLatency = Long.parseLong(value);
+					break;
+				case "queryLatency":
+					queryLatency = Long.parseLong(value);
+					break;
+				case "latencyJitter":
+					latencyJitter = Long.parseLong(value);
+					break;
+				case "connectFailureRate":
+					connectFailureRate = Double.parseDouble(value);
+					break;
+				case "queryFailureRate":
+					queryFailureRate = Double.parseDouble(value);
+					break;
+				case "dropRate":
+					dropRate = Double.parseDouble(value);
+					break;
+				case "maxConnections":
+					maxConnections = Integer.parseInt(value);
+					break;
+				case "rows":
+					rows = Integer.parseInt(value);
+					break;
+				default:
+					throw new SQLException("未知的StubDriver参数:" + key);
+				}
+			} catch (NumberFormatException e) {
+				throw new SQLException("StubDriver参数格式错误:" + pair, e);
+			}
+		}
+	}
+
+	/**
+	 * @desc connect(模拟建连，返回连接所属的代数)
+	 * @author taylor
+	 */
+	int connect() throws SQLException {
+		connectCount.incrementAndGet();
+		pause(connectLatency);
+		if (!available) {
+			connectFailures.incrementAndGet();
+			throw new SQLNonTransientConnectionException("数据库" + name + "不可用");
+		}
+		if (hit(connectFailureRate)) {
+			connectFailures.incrementAndGet();
+			throw new SQLTransientConnectionException("模拟建连失败:" + name);
+		}
+		int limit = maxConnections;
+		while (true) {
+			int open = openConnections.get();
+			if (limit > 0 && open >= limit) {
+				connectFailures.incrementAndGet();
+				throw new SQLTransientConnectionException("Too many connections:" + name);
+			}
+			if (openConnections.compareAndSet(open, open + 1)) {
+				return generation.get();
+			}
+		}
+	}
+
+	void disconnect() {
+		openConnections.decrementAndGet();
+	}
+
+	/**
+	 * @desc isAlive(指定代数的连接是否仍然有效)
+	 * @param connectionGeneration
+	 * @author taylor
+	 */
+	boolean isAlive(int connectionGeneration) {
+		return available && connectionGeneration == generation.get();
+	}
+
+	/**
+	 * @desc execute(模拟执行一条语句，返回false表示连接在执行中被断开)
+	 * @author taylor
+	 */
+	boolean execute() throws SQLException {
+		queryCount.incrementAndGet();
+		pause(queryLatency);
+		if (hit(dropRate)) {
+			droppedConnections.incrementAndGet();
+			return false;
+		}
+		if (hit(queryFailureRate)) {
+			queryFailures.incrementAndGet();
+			throw new SQLException("模拟语句执行失败:" + name);
+		}
+		return true;
+	}
+
+	private void pause(long millis) throws SQLException {
+		long jitter = latencyJitter;
+		if (jitter > 0) {
+			millis += ThreadLocalRandom.current().nextLong(jitter + 1);
+		}
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("等待被中断", e);
+		}
+	}
+
+	private static boolean hit(double rate) {
+		return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+	}
+
+	/**
+	 * @desc dropConnections(断开当前全部连接，模拟后端重启，之后新建的连接不受影响)
+	 * @author taylor
+	 */
+	public void dropConnections() {
+		generation.incrementAndGet();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getConnectLatency() {
+		return connectLatency;
+	}
+
+	public StubDatabase setConnectLatency(long connectLatency) {
+		this.connectLatency = connectLatency;
+		return this;
+	}
+
+	public long getQueryLatency() {
+		return queryLatency;
+	}
+
+	public StubDatabase setQueryLatency(long queryLatency) {
+		this.queryLatency = queryLatency;
+		return this;
+	}
+
+	public long getLatencyJitter() {
+		return latencyJitter;
+	}
+
+	public StubDatabase setLatencyJitter(long latencyJitter) {
+		this.latencyJitter = latencyJitter;
+		return this;
+	}
+
+	public double getConnectFailureRate() {
+		return connectFailureRate;
+	}
+
+	public StubDatabase setConnectFailureRate(double connectFailureRate) {
+		this.connectFailureRate = connectFailureRate;
+		return this;
+	}
+
+	public double getQueryFailureRate() {
+		return queryFailureRate;
+	}
+
+	public StubDatabase setQueryFailureRate(double queryFailureRate) {
+		this.queryFailureRate = queryFailureRate;
+		return this;
+	}
+
+	public double getDropRate() {
+		return dropRate;
+	}
+
+	public StubDatabase setDropRate(double dropRate) {
+		this.dropRate = dropRate;
+		return this;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public StubDatabase setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+		return this;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public StubDatabase setRows(int rows) {
+		this.rows = rows;
+		return this;
+	}
+
+	public boolean isAvailable() {
+		return available;
+	}
+
+	/**
+	 * @desc setAvailable(切换可用状态，不可用期间建连失败、已有连接校验失败)
+	 * @param available
+	 * @author taylor
+	 */
+	public StubDatabase setAvailable(boolean available) {
+		this.available = available;
+		return this;
+	}
+
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+
+	public long getConnectCount() {
+		return connectCount.get();
+	}
+
+	public long getConnectFailures() {
+		return connectFailures.get();
+	}
+
+	public long getQueryCount() {
+		return queryCount.get();
+	}
+
+	public long getQueryFailures() {
+		return queryFailures.get();
+	}
+
+	public long getDroppedConnections() {
+		return droppedConnections.get();
+	}
+
+	@Override
+	public String toString() {
+		return "StubDatabase[" + name + ", open=" + openConnections.get() + ", connects=" + connectCount.get()
+				+ ", queries=" + queryCount.get() + "]";
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.taylor.stub;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * @ClassName: StubDriver
+ * @Function: 进程内的假JDBC驱动，URL格式为jdbc:stub:名称[?参数]，不连接任何数据库，用于在没有MySQL的环境下压测连接池
+ *            延迟、失败注入等参数见StubDatabase
+ * @author Taylor
+ */
+public class StubDriver implements Driver {
+
+	public static final String URL_PREFIX = "jdbc:stub:";
+
+	static {
+		try {
+			DriverManager.registerDriver(new StubDriver());
+		} catch (SQLException e) {
+			System.out.println("注册StubDriver失败");
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+		StubDatabase database = StubDatabase.forUrl(url);
+		int generation = database.connect();
+		return (Connection) Proxy.newProxyInstance(StubDriver.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new StubConnection(database, generation));
+	}
+
+	@Override
+	public boolean acceptsURL(String url) throws SQLException {
+		return url != null && url.startsWith(URL_PREFIX);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.taylor.stub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * @ClassName: StubResultSet
+ * @Function: StubStatement返回的结果集，固定两列：id(INTEGER，从1开始)和name(VARCHAR，row-id)
+ * @author Taylor
+ */
+class StubResultSet implements InvocationHandler {
+
+	private static final String[] COLUMNS = { "id", "name" };
+
+	private final Object statementProxy;
+
+	private final int rows;
+
+	/**
+	 * 当前行号，从1开始，0表示第一行之前
+	 */
+	private int row;
+
+	private volatile boolean closed;
+
+	StubResultSet(Object statementProxy, int rows) {
+		this.statementProxy = statementProxy;
+		this.rows = rows;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		switch (name) {
+		case "close":
+			closed = true;
+			return null;
+		case "isClosed":
+			return closed;
+		case "getStatement":
+			return statementProxy;
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "toString":
+			return "StubResultSet";
+		default:
+			break;
+		}
+		if (closed) {
+			throw new SQLException("结果集已关闭");
+		}
+		switch (name) {
+		case "next":
+			if (row <= rows) {
+				row++;
+			}
+			return row <= rows;
+		case "getRow":
+			return row <= rows ? row : 0;
+		case "wasNull":
+			return false;
+		case "findColumn":
+			return columnIndex(args[0]);
+		case "getMetaData":
+			return Proxy.newProxyInstance(StubResultSet.class.getClassLoader(),
+					new Class<?>[] { ResultSetMetaData.class }, new MetaData());
+		case "getObject":
+		case "getInt":
+		case "getLong":
+		case "getString":
+			return value(name, columnIndex(args[0]));
+		default:
+			return StubStatement.defaultValue(method.getReturnType());
+		}
+	}
+
+	private int columnIndex(Object column) throws SQLException {
+		if (column instanceof Integer) {
+			int index = (Integer) column;
+			if (index >= 1 && index <= COLUMNS.length) {
+				return index;
+			}
+		} else {
+			for (int i = 0; i < COLUMNS.length; i++) {
+				if (COLUMNS[i].equalsIgnoreCase(String.valueOf(column))) {
+					return i + 1;
+				}
+			}
+		}
+		throw new SQLException("列不存在:" + column);
+	}
+
+	private Object value(String getter, int column) throws SQLException {
+		if (row < 1 || row > rows) {
+			throw new SQLException("游标不在有效行上");
+		}
+		if (column == 1) {
+			if ("getString".equals(getter)) {
+				return String.valueOf(row);
+			}
+			return "getLong".equals(getter) ? (Object) (long) row : (Object) row;
+		}
+		if ("getInt".equals(getter) || "getLong".equals(getter)) {
+			throw new SQLException("列name不是数值类型");
+		}
+		return "row-" + row;
+	}
+
+	/**
+	 * @ClassName: MetaData
+	 * @Function: 结果集的列信息
+	 */
+	private static class MetaData implements InvocationHandler {
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getColumnCount":
+				return COLUMNS.length;
+			case "getColumnName":
+			case "getColumnLabel":
+				return COLUMNS[(Integer) args[0] - 1];
+			case "getColumnType":
+				return (Integer) args[0] == 1 ? Types.INTEGER : Types.VARCHAR;
+			case "getColumnTypeName":
+				return (Integer) args[0] == 1 ? "INTEGER" : "VARCHAR";
+			case "getColumnClassName":
+				return (Integer) args[0] == 1 ? Integer.class.getName() : String.class.getName();
+			case "isNullable":
+				return ResultSetMetaData.columnNoNulls;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "StubResultSetMetaData";
+			default:
+				return StubStatement.defaultValue(method.getReturnType());
+			}
+		}
+	}
+
+}
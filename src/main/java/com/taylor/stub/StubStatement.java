@@ -0,0 +1,111 @@
+package com.taylor.stub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * @ClassName: StubStatement
+ * @Function: StubConnection创建的Statement/PreparedStatement，查询返回StubDatabase配置行数的结果集，更新返回1，批量每行返回1
+ * @author Taylor
+ */
+class StubStatement implements InvocationHandler {
+
+	private final StubConnection connection;
+
+	private final Object connectionProxy;
+
+	private volatile boolean closed;
+
+	/**
+	 * addBatch()积攒的行数
+	 */
+	private int batched;
+
+	StubStatement(StubConnection connection, Object connectionProxy) {
+		this.connection = connection;
+		this.connectionProxy = connectionProxy;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		switch (name) {
+		case "close":
+			closed = true;
+			return null;
+		case "isClosed":
+			return closed;
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "toString":
+			return "StubStatement";
+		case "getConnection":
+			return connectionProxy;
+		default:
+			break;
+		}
+		if (closed || connection.isClosed()) {
+			throw new SQLException("语句已关闭");
+		}
+		switch (name) {
+		case "executeQuery":
+			connection.execute();
+			return Proxy.newProxyInstance(StubStatement.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+					new StubResultSet(proxy, connection.getRows()));
+		case "executeUpdate":
+		case "executeLargeUpdate":
+			connection.execute();
+			return method.getReturnType() == long.class ? (Object) 1L : (Object) 1;
+		case "execute":
+			connection.execute();
+			return false;
+		case "addBatch":
+			batched++;
+			return null;
+		case "clearBatch":
+			batched = 0;
+			return null;
+		case "executeBatch":
+		case "executeLargeBatch":
+			int rows = batched;
+			batched = 0;
+			connection.execute();
+			if (method.getReturnType() == long[].class) {
+				long[] counts = new long[rows];
+				Arrays.fill(counts, 1L);
+				return counts;
+			}
+			int[] counts = new int[rows];
+			Arrays.fill(counts, 1);
+			return counts;
+		default:
+			return defaultValue(method.getReturnType());
+		}
+	}
+
+	static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0d;
+		} else if (type == float.class) {
+			return 0f;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		}
+		return null;
+	}
+
+}
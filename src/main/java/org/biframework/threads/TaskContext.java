@@ -0,0 +1,110 @@
+package org.biframework.threads;
+
+import java.util.Hashtable;
+
+/**
+ * Attributes and notes of a task running on a VIRTUAL mode ThreadPool. It
+ * replaces ThreadWithAttributes, which virtual threads cannot extend, and
+ * has the same guarded accessors.
+ *
+ * Contexts are recycled by the pool: a task borrows one for its duration,
+ * so there are never more contexts than the concurrency limit and the
+ * ThreadPoolRunnable.getInitData() array is created once per context
+ * rather than once per task, like it is once per thread on platform
+ * threads.
+ */
+public final class TaskContext {
+
+	private static final ThreadLocal<TaskContext> CURRENT = new ThreadLocal<TaskContext>();
+
+	private final Object control;
+	private final Object notes[] = new Object[ThreadWithAttributes.MAX_NOTES];
+	private final Hashtable<Object, Object> attributes = new Hashtable<Object, Object>();
+	private String currentStage;
+	private Object param;
+	private volatile long stageStartedAt;
+
+	private Object thData[];
+
+	TaskContext(Object control) {
+		this.control = control;
+	}
+
+	/**
+	 * The context of the task running on the current thread, null when the
+	 * thread is not running a VIRTUAL mode task.
+	 */
+	public static TaskContext current() {
+		return CURRENT.get();
+	}
+
+	static void bind(TaskContext ctx) {
+		CURRENT.set(ctx);
+	}
+
+	/**
+	 * Detach the context from the thread and clear the per-task state, the
+	 * thread data and notes are kept for the next task.
+	 */
+	void release() {
+		CURRENT.remove();
+		if (stageStartedAt != 0) {
+			ThreadPool.stageChanged(control, currentStage, stageStartedAt);
+			stageStartedAt = 0;
+		}
+		currentStage = null;
+		param = null;
+	}
+
+	public final Object[] getThreadData(Object control) {
+		return thData;
+	}
+
+	public final void setThreadData(Object control, Object thData[]) {
+		this.thData = thData;
+	}
+
+	public final void setNote(Object control, int id, Object value) {
+		if (this.control != control) return;
+		notes[id] = value;
+	}
+
+	public final Object getNote(Object control, int id) {
+		if (this.control != control) return null;
+		return notes[id];
+	}
+
+	public final String getCurrentStage(Object control) {
+		if (this.control != control) return null;
+		return currentStage;
+	}
+
+	/**
+	 * Enter a new stage, the time spent in the previous one is recorded when
+	 * the pool records metrics.
+	 */
+	public final void setCurrentStage(Object control, String currentStage) {
+		if (this.control != control) return;
+		stageStartedAt = ThreadPool.stageChanged(control, this.currentStage, stageStartedAt);
+		this.currentStage = currentStage;
+	}
+
+	final long getStageStartedAt() {
+		return stageStartedAt;
+	}
+
+	public final Object getParam(Object control) {
+		if (this.control != control) return null;
+		return param;
+	}
+
+	public final void setParam(Object control, Object param) {
+		if (this.control != control) return;
+		this.param = param;
+	}
+
+	public final Hashtable<Object, Object> getAttributes(Object control) {
+		return attributes;
+	}
+
+}
@@ -1,813 +1,2188 @@
-package org.biframework.threads;
-
-import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.Vector;
-
-/**
- * A thread pool that is trying to copy the apache process management.
- *
- * Should we remove this in favor of Doug Lea's thread package?
- *
- * @author Gal Shachor
- * @author Yoav Shapira <yoavs@apache.org>
- */
-public class ThreadPool {
-
-	/*
-	 * Default values ...
-	 */
-	public static final int MAX_THREADS = 100;// 最大线程数
-	public static final int MAX_THREADS_MIN = 5;// 最大线程数的最小值
-	public static final int MAX_SPARE_THREADS = 30;// 最大空闲数
-	public static final int MIN_SPARE_THREADS = 2;// 最小空闲数
-	public static final int WORK_WAIT_TIMEOUT = 60 * 1000;// 超时时间
-
-	/**
-	 * Where the threads are held.
-	 */
-	protected ControlRunnable[] pool = null;
-
-	/**
-	 * A monitor thread that monitors the pool for idel threads. 监听线程
-	 */
-	protected MonitorRunnable monitor;
-
-	/**
-	 * Max number of threads that you can open in the pool. 最大线程
-	 */
-	protected int maxThreads;
-
-	/**
-	 * Min number of idel threads that you can leave in the pool. 线程池中的最小线程数
-	 * 最小空闲线程
-	 */
-	protected int minSpareThreads;
-
-	/**
-	 * Max number of idel threads that you can leave in the pool. 线程池中的最大线程数
-	 * 最大空闲线程
-	 */
-	protected int maxSpareThreads;
-
-	/**
-	 * Number of threads in the pool. 线程池中的数量
-	 */
-	protected int currentThreadCount;
-
-	/**
-	 * Number of busy threads in the pool. 线程池中繁忙线程的数量
-	 */
-	protected int currentThreadsBusy;
-
-	/**
-	 * Flag that the pool should terminate all the threads and stop.
-	 * 终止和停止所有池中线程的标志
-	 */
-	protected boolean stopThePool;
-
-	/**
-	 * Flag to control if the main thread is 'daemon' 主线程孔昂志标志
-	 */
-	protected boolean isDaemon = true;
-
-	/**
-	 * The threads that are part of the pool. Key is Thread, value is the
-	 * ControlRunnable 键=线程 值=ControlRunnable
-	 */
-	protected Hashtable<Thread, ControlRunnable> threads = new Hashtable<Thread, ControlRunnable>();
-
-	protected Vector<ThreadPoolListener> listeners = new Vector<ThreadPoolListener>();
-
-	/**
-	 * Name of the threadpool 线程池的名字
-	 */
-	protected String name = "TP";
-
-	/**
-	 * Sequence. 序列
-	 */
-	protected int sequence = 1;
-
-	/**
-	 * Thread priority. 线程优先级
-	 */
-	protected int threadPriority = Thread.NORM_PRIORITY;
-
-	private static ThreadPool tp = new ThreadPool();
-
-	/**
-	 * Constructor.
-	 */
-	private ThreadPool() {
-		maxThreads = MAX_THREADS;
-		maxSpareThreads = MAX_SPARE_THREADS;
-		minSpareThreads = MIN_SPARE_THREADS;
-		currentThreadCount = 0;
-		currentThreadsBusy = 0;
-		stopThePool = false;
-	}
-
-	public static ThreadPool getInstance() {
-		return tp;
-	}
-
-	/**
-	 * Create a ThreadPool instance.
-	 *
-	 * @param jmx
-	 *            UNUSED
-	 * @return ThreadPool instance. If JMX support is requested, you need to
-	 *         call register() in order to set a name.
-	 */
-	public static ThreadPool createThreadPool(boolean jmx) {
-		return new ThreadPool();
-	}
-
-	public synchronized void start() {
-		stopThePool = false;
-		currentThreadCount = 0;
-		currentThreadsBusy = 0;
-
-		adjustLimits();
-
-		pool = new ControlRunnable[maxThreads];
-
-		openThreads(minSpareThreads);
-		if (maxSpareThreads < maxThreads) {
-			monitor = new MonitorRunnable(this);
-		}
-	}
-
-	public MonitorRunnable getMonitor() {
-		return monitor;
-	}
-
-	/**
-	 * Sets the thread priority for current and future threads in this pool.
-	 *
-	 * @param threadPriority
-	 *            The new priority
-	 * @throws IllegalArgumentException
-	 *             If the specified priority is less than Thread.MIN_PRIORITY or
-	 *             more than Thread.MAX_PRIORITY 设置线程优先级
-	 */
-	public synchronized void setThreadPriority(int threadPriority) {
-
-		if (threadPriority < Thread.MIN_PRIORITY) {
-			throw new IllegalArgumentException("new priority < MIN_PRIORITY");
-		} else if (threadPriority > Thread.MAX_PRIORITY) {
-			throw new IllegalArgumentException("new priority > MAX_PRIORITY");
-		}
-
-		// Set for future threads
-		this.threadPriority = threadPriority;
-
-		Enumeration<Thread> currentThreads = getThreads();
-		Thread t = null;
-		while (currentThreads.hasMoreElements()) {
-			t = (Thread) currentThreads.nextElement();
-			t.setPriority(threadPriority);
-		}
-	}
-
-	/**
-	 * Returns the priority level of current and future threads in this pool.
-	 *
-	 * @return The priority
-	 */
-	public int getThreadPriority() {
-		return threadPriority;
-	}
-
-	public void setMaxThreads(int maxThreads) {
-		this.maxThreads = maxThreads;
-	}
-
-	public int getMaxThreads() {
-		return maxThreads;
-	}
-
-	public void setMinSpareThreads(int minSpareThreads) {
-		this.minSpareThreads = minSpareThreads;
-	}
-
-	public int getMinSpareThreads() {
-		return minSpareThreads;
-	}
-
-	public void setMaxSpareThreads(int maxSpareThreads) {
-		this.maxSpareThreads = maxSpareThreads;
-	}
-
-	public int getMaxSpareThreads() {
-		return maxSpareThreads;
-	}
-
-	public int getCurrentThreadCount() {
-		return currentThreadCount;
-	}
-
-	public int getCurrentThreadsBusy() {
-		return currentThreadsBusy;
-	}
-
-	public boolean isDaemon() {
-		return isDaemon;
-	}
-
-	public static int getDebug() {
-		return 0;
-	}
-
-	/**
-	 * The default is true - the created threads will be in daemon mode. If set
-	 * to false, the control thread will not be daemon - and will keep the
-	 * process alive.
-	 */
-	public void setDaemon(boolean b) {
-		isDaemon = b;
-	}
-
-	public boolean getDaemon() {
-		return isDaemon;
-	}
-
-	public void setName(String name) {
-		this.name = name;
-	}
-
-	public String getName() {
-		return name;
-	}
-
-	public int getSequence() {
-		return sequence++;
-	}
-
-	public void addThread(Thread t, ControlRunnable cr) {
-		threads.put(t, cr);
-		for (int i = 0; i < listeners.size(); i++) {
-			ThreadPoolListener tpl = (ThreadPoolListener) listeners.elementAt(i);
-			tpl.threadStart(this, t);
-		}
-	}
-
-	public void removeThread(Thread t) {
-		threads.remove(t);
-		for (int i = 0; i < listeners.size(); i++) {
-			ThreadPoolListener tpl = (ThreadPoolListener) listeners.elementAt(i);
-			tpl.threadEnd(this, t);
-		}
-	}
-
-	public void addThreadPoolListener(ThreadPoolListener tpl) {
-		listeners.addElement(tpl);
-	}
-
-	public Enumeration<Thread> getThreads() {
-		return threads.keys();
-	}
-
-	public void run(Runnable r) {
-		ControlRunnable c = findControlRunnable();
-		c.runIt(r);
-	}
-
-	//
-	// You may wonder what you see here ... basically I am trying
-	// to maintain a stack of threads. This way locality in time
-	// is kept and there is a better chance to find residues of the
-	// thread in memory next time it runs.
-	//
-
-	/**
-	 * Executes a given Runnable on a thread in the pool, block if needed.
-	 */
-	public void runIt(ThreadPoolRunnable r) {
-		if (null == r) {
-			throw new NullPointerException();
-		}
-
-		ControlRunnable c = findControlRunnable();
-		c.runIt(r);
-	}
-
-	private ControlRunnable findControlRunnable() {
-		ControlRunnable c = null;
-
-		if (stopThePool) {
-			throw new IllegalStateException();
-		}
-
-		// Obtain a free thread from the pool.
-		synchronized (this) {
-
-			while (currentThreadsBusy == currentThreadCount) {
-				// All threads are busy
-				if (currentThreadCount < maxThreads) {
-					// Not all threads were open,
-					// Open new threads up to the max number of idel threads
-					int toOpen = currentThreadCount + minSpareThreads;
-					openThreads(toOpen);
-				} else {
-
-					// Wait for a thread to become idel.
-					try {
-						this.wait();
-					}
-					// was just catch Throwable -- but no other
-					// exceptions can be thrown by wait, right?
-					// So we catch and ignore this one, since
-					// it'll never actually happen, since nowhere
-					// do we say pool.interrupt().
-					catch (InterruptedException e) {
-
-					}
-
-					// Pool was stopped. Get away of the pool.
-					if (stopThePool) {
-						break;
-					}
-				}
-			}
-			// Pool was stopped. Get away of the pool.
-			if (0 == currentThreadCount || stopThePool) {
-				throw new IllegalStateException();
-			}
-
-			// If we are here it means that there is a free thread. Take it.
-			int pos = currentThreadCount - currentThreadsBusy - 1;
-			c = pool[pos];
-			pool[pos] = null;
-			currentThreadsBusy++;
-
-		}
-		System.out.println(c);
-		return c;
-	}
-
-	/**
-	 * Stop the thread pool
-	 */
-	public synchronized void shutdown() {
-		if (!stopThePool) {
-			stopThePool = true;
-			if (monitor != null) {
-				monitor.terminate();
-				monitor = null;
-			}
-			for (int i = 0; i < currentThreadCount - currentThreadsBusy; i++) {
-				try {
-					pool[i].terminate();
-				} catch (Throwable t) {
-					/*
-					 * Do nothing... The show must go on, we are shutting down
-					 * the pool and nothing should stop that.
-					 */
-
-				}
-			}
-			currentThreadsBusy = currentThreadCount = 0;
-			pool = null;
-			notifyAll();
-		}
-	}
-
-	/**
-	 * Called by the monitor thread to harvest idle threads.
-	 */
-	protected synchronized void checkSpareControllers() {
-
-		if (stopThePool) {
-			return;
-		}
-
-		if ((currentThreadCount - currentThreadsBusy) > maxSpareThreads) {
-			int toFree = currentThreadCount - currentThreadsBusy - maxSpareThreads;
-
-			for (int i = 0; i < toFree; i++) {
-				ControlRunnable c = pool[currentThreadCount - currentThreadsBusy - 1];
-				c.terminate();
-				pool[currentThreadCount - currentThreadsBusy - 1] = null;
-				currentThreadCount--;
-			}
-
-		}
-
-	}
-
-	/**
-	 * Returns the thread to the pool. Called by threads as they are becoming
-	 * idel.
-	 */
-	protected synchronized void returnController(ControlRunnable c) {
-
-		if (0 == currentThreadCount || stopThePool) {
-			c.terminate();
-			return;
-		}
-
-		// atomic
-		currentThreadsBusy--;
-
-		pool[currentThreadCount - currentThreadsBusy - 1] = c;
-		notify();
-	}
-
-	/**
-	 * Inform the pool that the specific thread finish.
-	 *
-	 * Called by the ControlRunnable.run() when the runnable throws an
-	 * exception.
-	 */
-	protected synchronized void notifyThreadEnd(ControlRunnable c) {
-		currentThreadsBusy--;
-		currentThreadCount--;
-		notify();
-	}
-
-	/*
-	 * Checks for problematic configuration and fix it. The fix provides
-	 * reasonable settings for a single CPU with medium load. 检查有问题的配置和修复它。
-	 * 此修复程序提供了一个单一CPU合理设置 中等负荷。
-	 */
-	protected void adjustLimits() {
-		if (maxThreads <= 0) {
-			// 如果最大线程数小于0则赋予默认线程数
-			maxThreads = MAX_THREADS;
-		} else if (maxThreads < MAX_THREADS_MIN) {
-			// 如果最大线程数小于他的最小阀值,则最大线程数赋予默认值
-
-			maxThreads = MAX_THREADS_MIN;
-		}
-
-		if (maxSpareThreads >= maxThreads) {
-			// 如果最大空闲线程数大于默认值，将赋予默认值
-			maxSpareThreads = maxThreads;
-		}
-
-		if (maxSpareThreads <= 0) {
-			if (1 == maxThreads) {
-				maxSpareThreads = 1;
-			} else {
-				maxSpareThreads = maxThreads / 2;
-			}
-		}
-
-		if (minSpareThreads > maxSpareThreads) {
-			minSpareThreads = maxSpareThreads;
-		}
-
-		if (minSpareThreads <= 0) {
-			if (1 == maxSpareThreads) {
-				minSpareThreads = 1;
-			} else {
-				minSpareThreads = maxSpareThreads / 2;
-			}
-		}
-	}
-
-	/**
-	 * Create missing threads. 创建失踪线程
-	 * 
-	 * @param toOpen
-	 *            Total number of threads we'll have open 线程数开放
-	 */
-	protected void openThreads(int toOpen) {
-
-		if (toOpen > maxThreads) {
-			toOpen = maxThreads;
-		}
-
-		for (int i = currentThreadCount; i < toOpen; i++) {
-			pool[i - currentThreadsBusy] = new ControlRunnable(this);
-		}
-
-		currentThreadCount = toOpen;
-	}
-
-	/** @deprecated */
-	void log(String s) {
-
-		// loghelper.flush();
-	}
-
-	/**
-	 * Periodically execute an action - cleanup in this case 定期执行清理 监听线程
-	 */
-	public static class MonitorRunnable implements Runnable {
-		ThreadPool p;
-		Thread t;
-		int interval = WORK_WAIT_TIMEOUT;
-		boolean shouldTerminate;
-
-		MonitorRunnable(ThreadPool p) {
-			this.p = p;
-			this.start();
-		}
-
-		public void start() {
-			shouldTerminate = false;
-			t = new Thread(this);
-			t.setDaemon(p.getDaemon());
-			t.setName(p.getName() + "-Monitor");
-			t.start();
-		}
-
-		public void setInterval(int i) {
-			this.interval = i;
-		}
-
-		public void run() {
-			while (true) {
-				try {
-
-					// Sleep for a while.
-					synchronized (this) {
-						this.wait(interval);
-					}
-
-					// Check if should terminate.
-					// termination happens when the pool is shutting down.
-					if (shouldTerminate) {
-						break;
-					}
-
-					// Harvest idle threads.
-					p.checkSpareControllers();
-
-				} catch (Throwable t) {
-
-				}
-			}
-		}
-
-		public void stop() {
-			this.terminate();
-		}
-
-		/**
-		 * Stop the monitor
-		 */
-		public synchronized void terminate() {
-			shouldTerminate = true;
-			this.notify();
-		}
-	}
-
-	/**
-	 * A Thread object that executes various actions ( ThreadPoolRunnable )
-	 * under control of ThreadPool 线程执行对象（ThreadPoolRunnable的各项行动） 控制下的线程池
-	 */
-	public static class ControlRunnable implements Runnable {
-		/**
-		 * ThreadPool where this thread will be returned 线程池在此线程中将被返回
-		 */
-		private ThreadPool p;
-
-		/**
-		 * The thread that executes the actions 线程执行的行动
-		 */
-		private ThreadWithAttributes t;
-
-		/**
-		 * The method that is executed in this thread 认为在这个线程执行的方法
-		 */
-		private ThreadPoolRunnable toRun;
-		
-		
-		private Runnable toRunRunnable;
-
-		/**
-		 * Stop this thread 线程停止标志
-		 */
-		private boolean shouldTerminate;
-
-		/**
-		 * Activate the execution of the action 线程激活标志
-		 */
-		private boolean shouldRun;
-
-		/**
-		 * Per thread data - can be used only if all actions are of the same
-		 * type. A better mechanism is possible ( that would allow association
-		 * of thread data with action type ), but right now it's enough.
-		 * *每个线程的数据-可以使用只有当所有的行动 同一类型。 一个更好的机制是可能的（这将使协会 螺纹行动类型的数据），但现在它是不够的。
-		 * 
-		 */
-		private boolean noThData;
-
-		/**
-		 * Start a new thread, with no method in it
-		 */
-		ControlRunnable(ThreadPool p) {
-			toRun = null;
-			shouldTerminate = false;
-			shouldRun = false;
-			this.p = p;
-			t = new ThreadWithAttributes(p, this);
-			t.setDaemon(true);
-			t.setName(p.getName() + "-Processor" + p.getSequence());
-			t.setPriority(p.getThreadPriority());
-			p.addThread(t, this);
-			noThData = true;
-			t.start();
-		}
-
-		public void run() {
-			boolean _shouldRun = false;
-			boolean _shouldTerminate = false;
-			ThreadPoolRunnable _toRun = null;
-			try {
-				while (true) {
-					try {
-						/* Wait for work. */
-						synchronized (this) {
-							while (!shouldRun && !shouldTerminate) {
-								this.wait();
-							}
-							_shouldRun = shouldRun;
-							_shouldTerminate = shouldTerminate;
-							_toRun = toRun;
-						}
-
-						if (_shouldTerminate) {
-
-							break;
-						}
-
-						/* Check if should execute a runnable. */
-						try {
-							if (noThData) {
-								if (_toRun != null) {
-									Object thData[] = _toRun.getInitData();
-									t.setThreadData(p, thData);
-
-								}
-								noThData = false;
-							}
-
-							if (_shouldRun) {
-								if (_toRun != null) {
-									_toRun.runIt(t.getThreadData(p));
-								} else if (toRunRunnable != null) {
-									toRunRunnable.run();
-								} else {
-
-								}
-							}
-						} catch (Throwable t) {
-
-							/*
-							 * The runnable throw an exception (can be even a
-							 * ThreadDeath), signalling that the thread die.
-							 *
-							 * The meaning is that we should release the thread
-							 * from the pool.
-							 */
-							_shouldTerminate = true;
-							_shouldRun = false;
-							p.notifyThreadEnd(this);
-						} finally {
-							if (_shouldRun) {
-								shouldRun = false;
-								/*
-								 * Notify the pool that the thread is now idle.
-								 */
-								p.returnController(this);
-							}
-						}
-
-						/*
-						 * Check if should terminate. termination happens when
-						 * the pool is shutting down.
-						 */
-						if (_shouldTerminate) {
-							break;
-						}
-					} catch (InterruptedException ie) { /*
-														 * for the wait
-														 * operation
-														 */
-						// can never happen, since we don't call interrupt
-
-					}
-				}
-			} finally {
-				p.removeThread(Thread.currentThread());
-			}
-		}
-
-		/**
-		 * Run a task
-		 *
-		 * @param toRun
-		 */
-		public synchronized void runIt(Runnable toRun) {
-			this.toRunRunnable = toRun;
-			// Do not re-init, the whole idea is to run init only once per
-			// thread - the pool is supposed to run a single task, that is
-			// initialized once.
-			// noThData = true;
-			shouldRun = true;
-			this.notify();
-		}
-
-		/**
-		 * Run a task
-		 *
-		 * @param toRun
-		 */
-		public synchronized void runIt(ThreadPoolRunnable toRun) {
-			this.toRun = toRun;
-			// Do not re-init, the whole idea is to run init only once per
-			// thread - the pool is supposed to run a single task, that is
-			// initialized once.
-			// noThData = true;
-			shouldRun = true;
-			this.notify();
-		}
-
-		public void stop() {
-			this.terminate();
-		}
-
-		@SuppressWarnings("deprecation")
-		public void kill() {
-			t.stop();
-		}
-
-		public synchronized void terminate() {
-			shouldTerminate = true;
-			this.notify();
-		}
-	}
-
-	/**
-	 * Debug display of the stage of each thread. The return is html style, for
-	 * display in the console ( it can be easily parsed too ).
-	 *
-	 * @return The thread status display
-	 */
-	public String threadStatusString() {
-		StringBuffer sb = new StringBuffer();
-		Iterator<Thread> it = threads.keySet().iterator();
-		sb.append("<ul>");
-		while (it.hasNext()) {
-			sb.append("<li>");
-			ThreadWithAttributes twa = (ThreadWithAttributes) it.next();
-			sb.append(twa.getCurrentStage(this)).append(" ");
-			sb.append(twa.getParam(this));
-			sb.append("</li>\n");
-		}
-		sb.append("</ul>");
-		return sb.toString();
-	}
-
-	/**
-	 * Return an array with the status of each thread. The status indicates the
-	 * current request processing stage ( for tomcat ) or whatever the thread is
-	 * doing ( if the application using TP provide this info )
-	 *
-	 * @return The status of all threads
-	 */
-	public String[] getThreadStatus() {
-		String status[] = new String[threads.size()];
-		Iterator<Thread> it = threads.keySet().iterator();
-		for (int i = 0; (i < status.length && it.hasNext()); i++) {
-			ThreadWithAttributes twa = (ThreadWithAttributes) it.next();
-			status[i] = twa.getCurrentStage(this);
-		}
-		return status;
-	}
-
-	/**
-	 * Return an array with the current "param"
-	 * thread. This is typically the last request.
-	 *
-	 * @return The params of all threads
-	 */
-	public String[] getThreadParam() {
-		String status[] = new String[threads.size()];
-		Iterator<Thread> it = threads.keySet().iterator();
-		for (int i = 0; (i < status.length && it.hasNext()); i++) {
-			ThreadWithAttributes twa = (ThreadWithAttributes) it.next();
-			Object o = twa.getParam(this);
-			status[i] = (o == null) ? null : o.toString();
-		}
-		return status;
-	}
-
-	/**
-	 * Interface to allow applications to be notified when a threads are created
-	 * and stopped.
-	 */
-	public static interface ThreadPoolListener {
-		public void threadStart(ThreadPool tp, Thread t);
-
-		public void threadEnd(ThreadPool tp, Thread t);
-	}
-
-}
+package org.biframework.threads;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A thread pool that is trying to copy the apache process management.
+ *
+ * Should we remove this in favor of Doug Lea's thread package?
+ *
+ * The pool is also an ExecutorService: submit() and invokeAll() run on
+ * the pool threads through execute(), shutdown() lets submitted work
+ * finish and awaitTermination() waits for the last thread to leave.
+ *
+ * @author Gal Shachor
+ * @author Yoav Shapira <yoavs@apache.org>
+ */
+public class ThreadPool extends AbstractExecutorService implements ThreadPoolMXBean {
+
+	/*
+	 * Default values ...
+	 */
+	public static final int MAX_THREADS = 100;// 最大线程数
+	public static final int MAX_THREADS_MIN = 5;// 最大线程数的最小值
+	public static final int MAX_SPARE_THREADS = 30;// 最大空闲数
+	public static final int MIN_SPARE_THREADS = 2;// 最小空闲数
+	public static final int WORK_WAIT_TIMEOUT = 60 * 1000;// 超时时间
+	public static final int QUEUE_CAPACITY = 1000;// 任务队列默认容量
+	public static final int SAMPLE_INTERVAL = 100;// 队列模式下监听线程的采样间隔(毫秒)
+	public static final int SAMPLE_WINDOW = 10;// 滑动窗口的采样数
+	public static final int TARGET_QUEUE_DELAY = 20;// 目标排队延迟(毫秒)
+	public static final double HIGH_UTILIZATION = 0.9;// 高利用率阈值
+
+	/**
+	 * Where the threads are held.
+	 */
+	protected ControlRunnable[] pool = null;
+
+	/**
+	 * A monitor thread that monitors the pool for idel threads. 监听线程
+	 */
+	protected MonitorRunnable monitor;
+
+	/**
+	 * Max number of threads that you can open in the pool. 最大线程
+	 */
+	protected int maxThreads;
+
+	/**
+	 * Min number of idel threads that you can leave in the pool. 线程池中的最小线程数
+	 * 最小空闲线程
+	 */
+	protected int minSpareThreads;
+
+	/**
+	 * Max number of idel threads that you can leave in the pool. 线程池中的最大线程数
+	 * 最大空闲线程
+	 */
+	protected int maxSpareThreads;
+
+	/**
+	 * Number of threads in the pool. 线程池中的数量
+	 */
+	protected int currentThreadCount;
+
+	/**
+	 * Number of busy threads in the pool. 线程池中繁忙线程的数量
+	 */
+	protected int currentThreadsBusy;
+
+	/**
+	 * Flag that the pool should terminate all the threads and stop.
+	 * 终止和停止所有池中线程的标志
+	 */
+	protected volatile boolean stopThePool;
+
+	/**
+	 * Flag to control if the main thread is 'daemon' 主线程孔昂志标志
+	 */
+	protected boolean isDaemon = true;
+
+	/**
+	 * The threads that are part of the pool. Key is Thread, value is the
+	 * ControlRunnable 键=线程 值=ControlRunnable
+	 */
+	protected Hashtable<Thread, ControlRunnable> threads = new Hashtable<Thread, ControlRunnable>();
+
+	protected Vector<ThreadPoolListener> listeners = new Vector<ThreadPoolListener>();
+
+	/**
+	 * Name of the threadpool 线程池的名字
+	 */
+	protected String name = "TP";
+
+	/**
+	 * Sequence. 序列
+	 */
+	protected int sequence = 1;
+
+	/**
+	 * Thread priority. 线程优先级
+	 */
+	protected int threadPriority = Thread.NORM_PRIORITY;
+
+	/**
+	 * Number of callers blocked in findControlRunnable() waiting for a free
+	 * thread. 等待空闲线程的调用方数量
+	 */
+	protected int waitingSubmitters;
+
+	/**
+	 * HANDOFF mode: since when submitters have been blocked without a break,
+	 * guarded by the pool lock. 调用方开始阻塞的时间
+	 */
+	private long waitingSince;
+
+	/**
+	 * Register an MBean for this pool on start(). 启动时注册JMX
+	 */
+	protected boolean jmx;
+
+	/**
+	 * Name the pool is registered under, null if not registered.
+	 */
+	protected ObjectName objectName;
+
+	/**
+	 * How run() and runIt() hand tasks to the threads, fixed once the pool
+	 * is started. 任务派发方式
+	 */
+	protected ExecutionMode executionMode = ExecutionMode.HANDOFF;
+
+	/**
+	 * Capacity of the task queue in QUEUE mode. 任务队列容量
+	 */
+	protected int queueCapacity = QUEUE_CAPACITY;
+
+	/**
+	 * Tasks waiting for a thread in QUEUE mode, null in HANDOFF mode.
+	 */
+	protected BlockingQueue<Runnable> workQueue;
+
+	/**
+	 * What to do with a task when the queue is full. 队列满时的拒绝策略
+	 */
+	protected RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+
+	/**
+	 * Number of QUEUE mode threads blocked on an empty queue. 空闲线程数
+	 */
+	protected final AtomicInteger idleWorkers = new AtomicInteger();
+
+	/**
+	 * A thread idle for this long leaves the pool if there are more than
+	 * minSpareThreads. 线程空闲超时(毫秒)
+	 */
+	protected long workerIdleTimeout = WORK_WAIT_TIMEOUT;
+
+	/**
+	 * The monitor adds threads while the average queueing delay over the
+	 * window is above this. 目标排队延迟(毫秒)
+	 */
+	protected long targetQueueDelay = TARGET_QUEUE_DELAY;
+
+	/**
+	 * Sliding window of queueing delay (nanos) and utilization samples,
+	 * written by the monitor thread only. 滑动窗口
+	 */
+	private final long[] delaySamples = new long[SAMPLE_WINDOW];
+	private final double[] utilizationSamples = new double[SAMPLE_WINDOW];
+	private int sampleIndex;
+	private int sampleCount;
+
+	/**
+	 * Window averages, published for JMX.
+	 */
+	private volatile long averageQueueDelay;
+	private volatile double averageUtilization;
+
+	/**
+	 * Number of tasks refused because the queue was full. 被拒绝的任务数
+	 */
+	protected final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * WORK_STEALING mode threads, scanned by idle threads looking for work
+	 * to steal. 可被窃取任务的线程
+	 */
+	protected final CopyOnWriteArrayList<ControlRunnable> stealers = new CopyOnWriteArrayList<ControlRunnable>();
+
+	/**
+	 * WORK_STEALING mode threads parked for lack of work, woken one at a time
+	 * when work shows up. 休眠中的线程
+	 */
+	protected final ConcurrentLinkedQueue<ControlRunnable> parked = new ConcurrentLinkedQueue<ControlRunnable>();
+
+	/**
+	 * VIRTUAL mode: creates one virtual thread per task, null in the other
+	 * modes. 虚拟线程工厂
+	 */
+	protected ThreadFactory virtualThreads;
+
+	/**
+	 * VIRTUAL mode: at most maxThreads tasks run at once. 并发限制
+	 */
+	protected Limiter limiter;
+
+	/**
+	 * VIRTUAL mode: tasks started and not finished. 运行中的任务数
+	 */
+	protected final AtomicInteger virtualActive = new AtomicInteger();
+
+	/**
+	 * VIRTUAL mode: threads running a task, interrupted by shutdownNow().
+	 */
+	protected final ConcurrentHashMap<Thread, TaskContext> virtualRunning = new ConcurrentHashMap<Thread, TaskContext>();
+
+	/**
+	 * VIRTUAL mode: recycled task contexts. 可复用的任务上下文
+	 */
+	protected final ConcurrentLinkedQueue<TaskContext> contexts = new ConcurrentLinkedQueue<TaskContext>();
+
+	/**
+	 * Task and stage timings, recorded while metricsEnabled is set. 任务指标
+	 */
+	protected final ThreadPoolMetrics metrics = new ThreadPoolMetrics();
+
+	protected volatile boolean metricsEnabled;
+
+	/**
+	 * Signalled when the last thread leaves a stopped pool. 终止通知
+	 */
+	private final Object termination = new Object();
+
+	private static ThreadPool tp = new ThreadPool();
+
+	/**
+	 * Constructor.
+	 */
+	private ThreadPool() {
+		maxThreads = MAX_THREADS;
+		maxSpareThreads = MAX_SPARE_THREADS;
+		minSpareThreads = MIN_SPARE_THREADS;
+		currentThreadCount = 0;
+		currentThreadsBusy = 0;
+		stopThePool = false;
+	}
+
+	public static ThreadPool getInstance() {
+		return tp;
+	}
+
+	/**
+	 * Create a ThreadPool instance.
+	 *
+	 * @param jmx
+	 *            register an MBean for the pool when it is started
+	 * @return ThreadPool instance. If JMX support is requested, you need to
+	 *         call register() in order to set a name.
+	 */
+	public static ThreadPool createThreadPool(boolean jmx) {
+		ThreadPool tp = new ThreadPool();
+		tp.jmx = jmx;
+		return tp;
+	}
+
+	/**
+	 * Set the name of the pool and register it as an MBean under
+	 * org.biframework.threads:type=ThreadPool,name=<name>.
+	 *
+	 * @param name
+	 *            The pool name
+	 */
+	public synchronized void register(String name) {
+		unregister();
+		setName(name);
+		try {
+			ObjectName on = new ObjectName("org.biframework.threads:type=ThreadPool,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+			objectName = on;
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Remove the MBean registered by register(), if any.
+	 */
+	public synchronized void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		objectName = null;
+	}
+
+	public synchronized void start() {
+		stopThePool = false;
+		currentThreadCount = 0;
+		currentThreadsBusy = 0;
+
+		adjustLimits();
+
+		if (executionMode == ExecutionMode.VIRTUAL) {
+			// No pool threads: maxThreads limits the concurrent tasks.
+			pool = new ControlRunnable[0];
+			workQueue = null;
+			limiter = new Limiter(maxThreads);
+			virtualThreads = VirtualThreads.newFactory(name + "-Virtual");
+			if (jmx && objectName == null) {
+				register(name);
+			}
+			return;
+		}
+		virtualThreads = null;
+		limiter = null;
+
+		pool = new ControlRunnable[maxThreads];
+		if (executionMode != ExecutionMode.HANDOFF) {
+			workQueue = new LinkedBlockingQueue<Runnable>(queueCapacity);
+			idleWorkers.set(0);
+		} else {
+			workQueue = null;
+		}
+
+		openThreads(minSpareThreads);
+		sampleIndex = sampleCount = 0;
+		// The monitor sizes the pool, sampling often; idle threads retire
+		// themselves.
+		monitor = new MonitorRunnable(this, SAMPLE_INTERVAL);
+		if (jmx && objectName == null) {
+			register(name);
+		}
+	}
+
+	public MonitorRunnable getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * Sets the thread priority for current and future threads in this pool.
+	 *
+	 * @param threadPriority
+	 *            The new priority
+	 * @throws IllegalArgumentException
+	 *             If the specified priority is less than Thread.MIN_PRIORITY or
+	 *             more than Thread.MAX_PRIORITY 设置线程优先级
+	 */
+	public synchronized void setThreadPriority(int threadPriority) {
+
+		if (threadPriority < Thread.MIN_PRIORITY) {
+			throw new IllegalArgumentException("new priority < MIN_PRIORITY");
+		} else if (threadPriority > Thread.MAX_PRIORITY) {
+			throw new IllegalArgumentException("new priority > MAX_PRIORITY");
+		}
+
+		// Set for future threads
+		this.threadPriority = threadPriority;
+
+		Enumeration<Thread> currentThreads = getThreads();
+		Thread t = null;
+		while (currentThreads.hasMoreElements()) {
+			t = (Thread) currentThreads.nextElement();
+			t.setPriority(threadPriority);
+		}
+	}
+
+	/**
+	 * Returns the priority level of current and future threads in this pool.
+	 *
+	 * @return The priority
+	 */
+	public int getThreadPriority() {
+		return threadPriority;
+	}
+
+	/**
+	 * Can be called while the pool is running. Growing takes effect on the
+	 * next dispatch; when shrinking, surplus threads are retired as they
+	 * become idle. 运行时可调整
+	 */
+	public synchronized void setMaxThreads(int maxThreads) {
+		if (limiter != null) {
+			int delta = maxThreads - this.maxThreads;
+			if (delta > 0) {
+				limiter.release(delta);
+			} else if (delta < 0) {
+				limiter.reduce(-delta);
+			}
+			this.maxThreads = maxThreads;
+			return;
+		}
+		this.maxThreads = maxThreads;
+		if (pool != null && maxThreads > pool.length) {
+			ControlRunnable[] newPool = new ControlRunnable[maxThreads];
+			System.arraycopy(pool, 0, newPool, 0, pool.length);
+			pool = newPool;
+		}
+		// Let blocked submitters re-check the new limit.
+		notifyAll();
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public synchronized void setMinSpareThreads(int minSpareThreads) {
+		this.minSpareThreads = minSpareThreads;
+	}
+
+	public int getMinSpareThreads() {
+		return minSpareThreads;
+	}
+
+	/**
+	 * Can be called while the pool is running, the monitor harvests the
+	 * surplus idle threads. 运行时可调整
+	 */
+	public synchronized void setMaxSpareThreads(int maxSpareThreads) {
+		this.maxSpareThreads = maxSpareThreads;
+	}
+
+	public int getMaxSpareThreads() {
+		return maxSpareThreads;
+	}
+
+	public int getCurrentThreadCount() {
+		if (virtualThreads != null) {
+			return virtualActive.get();
+		}
+		return currentThreadCount;
+	}
+
+	public int getCurrentThreadsBusy() {
+		if (virtualThreads != null) {
+			return virtualActive.get();
+		}
+		if (workQueue != null) {
+			return Math.max(0, currentThreadCount - idleWorkers.get());
+		}
+		return currentThreadsBusy;
+	}
+
+	public int getCurrentThreadsIdle() {
+		if (virtualThreads != null) {
+			return 0;
+		}
+		if (workQueue != null) {
+			return idleWorkers.get();
+		}
+		return currentThreadCount - currentThreadsBusy;
+	}
+
+	/**
+	 * Select how tasks are dispatched. Must be called before start().
+	 *
+	 * @param executionMode
+	 *            The dispatch mode
+	 * @throws IllegalStateException
+	 *             If the pool is running
+	 */
+	public synchronized void setExecutionMode(ExecutionMode executionMode) {
+		checkNotRunning();
+		if (executionMode == ExecutionMode.VIRTUAL && !VirtualThreads.isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+		}
+		this.executionMode = executionMode;
+	}
+
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * Capacity of the QUEUE mode task queue. Must be called before start().
+	 */
+	public synchronized void setQueueCapacity(int queueCapacity) {
+		checkNotRunning();
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("queueCapacity <= 0");
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Can be changed while the pool is running. 运行时可调整
+	 */
+	public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+		if (null == rejectionPolicy) {
+			throw new NullPointerException();
+		}
+		this.rejectionPolicy = rejectionPolicy;
+	}
+
+	public RejectionPolicy getRejectionPolicy() {
+		return rejectionPolicy;
+	}
+
+	public int getQueueSize() {
+		BlockingQueue<Runnable> q = workQueue;
+		return q == null ? 0 : q.size();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Start or stop recording task and stage timings. Can be changed while
+	 * the pool is running. 开启任务指标
+	 */
+	public void setMetricsEnabled(boolean metricsEnabled) {
+		this.metricsEnabled = metricsEnabled;
+	}
+
+	public boolean isMetricsEnabled() {
+		return metricsEnabled;
+	}
+
+	/**
+	 * Queue wait, run time, throughput, failed and rejected counts, the
+	 * time spent in each stage and the stage every running task is in.
+	 * Throughput is measured since the previous call.
+	 */
+	public ThreadPoolMetrics.Snapshot getMetrics() {
+		long now = System.nanoTime();
+		List<ThreadPoolMetrics.ActiveStage> active = new ArrayList<ThreadPoolMetrics.ActiveStage>();
+		for (Thread thread : threads.keySet()) {
+			ThreadWithAttributes twa = (ThreadWithAttributes) thread;
+			long startedAt = twa.getStageStartedAt();
+			if (startedAt != 0) {
+				active.add(new ThreadPoolMetrics.ActiveStage(twa.getName(), twa.getCurrentStage(this),
+						twa.getParam(this), now - startedAt));
+			}
+		}
+		for (Map.Entry<Thread, TaskContext> e : virtualRunning.entrySet()) {
+			TaskContext ctx = e.getValue();
+			long startedAt = ctx.getStageStartedAt();
+			if (startedAt != 0) {
+				active.add(new ThreadPoolMetrics.ActiveStage(e.getKey().getName(), ctx.getCurrentStage(this),
+						ctx.getParam(this), now - startedAt));
+			}
+		}
+		Collections.sort(active, (a, b) -> Long.compare(b.getElapsed(), a.getElapsed()));
+		return metrics.snapshot(rejectedCount.get(), active);
+	}
+
+	public long getCompletedTaskCount() {
+		return metrics.getCompletedCount();
+	}
+
+	public long getFailedTaskCount() {
+		return metrics.getFailedCount();
+	}
+
+	/**
+	 * Record the end of a task when metrics are on.
+	 */
+	void taskDone(long submittedAt, long startedAt, boolean failure) {
+		if (startedAt == 0) {
+			return;
+		}
+		long wait = submittedAt == 0 ? 0 : startedAt - submittedAt;
+		metrics.recordTask(wait, System.nanoTime() - startedAt, failure);
+	}
+
+	/**
+	 * A task running on a thread of control left the given stage: record
+	 * the time spent in it if control is a pool recording metrics.
+	 *
+	 * @return the start time of the next stage, 0 when it is not timed
+	 */
+	static long stageChanged(Object control, String stage, long startedAt) {
+		if (!(control instanceof ThreadPool) || !((ThreadPool) control).metricsEnabled) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		if (stage != null && startedAt != 0) {
+			((ThreadPool) control).metrics.recordStage(stage, now - startedAt);
+		}
+		return now;
+	}
+
+	/**
+	 * Can be changed while the pool is running, takes effect on the next
+	 * idle wait. 运行时可调整
+	 */
+	public void setWorkerIdleTimeout(long workerIdleTimeout) {
+		if (workerIdleTimeout <= 0) {
+			throw new IllegalArgumentException("workerIdleTimeout <= 0");
+		}
+		this.workerIdleTimeout = workerIdleTimeout;
+	}
+
+	public long getWorkerIdleTimeout() {
+		return workerIdleTimeout;
+	}
+
+	/**
+	 * Can be changed while the pool is running. 运行时可调整
+	 */
+	public void setTargetQueueDelay(long targetQueueDelay) {
+		this.targetQueueDelay = targetQueueDelay;
+	}
+
+	public long getTargetQueueDelay() {
+		return targetQueueDelay;
+	}
+
+	/**
+	 * Average age of the oldest queued task over the sampling window, in
+	 * milliseconds.
+	 */
+	public double getQueueDelay() {
+		return averageQueueDelay / 1000000.0;
+	}
+
+	/**
+	 * Average fraction of busy threads over the sampling window.
+	 */
+	public double getUtilization() {
+		return averageUtilization;
+	}
+
+	private void checkNotRunning() {
+		if (pool != null && !stopThePool) {
+			throw new IllegalStateException("ThreadPool is running");
+		}
+	}
+
+	public int getWaitingSubmitters() {
+		return waitingSubmitters;
+	}
+
+	public boolean isDaemon() {
+		return isDaemon;
+	}
+
+	public static int getDebug() {
+		return 0;
+	}
+
+	/**
+	 * The default is true - the created threads will be in daemon mode. If set
+	 * to false, the control thread will not be daemon - and will keep the
+	 * process alive.
+	 */
+	public void setDaemon(boolean b) {
+		isDaemon = b;
+	}
+
+	public boolean getDaemon() {
+		return isDaemon;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getSequence() {
+		return sequence++;
+	}
+
+	public void addThread(Thread t, ControlRunnable cr) {
+		threads.put(t, cr);
+		for (int i = 0; i < listeners.size(); i++) {
+			ThreadPoolListener tpl = (ThreadPoolListener) listeners.elementAt(i);
+			tpl.threadStart(this, t);
+		}
+	}
+
+	public void removeThread(Thread t) {
+		threads.remove(t);
+		for (int i = 0; i < listeners.size(); i++) {
+			ThreadPoolListener tpl = (ThreadPoolListener) listeners.elementAt(i);
+			tpl.threadEnd(this, t);
+		}
+		if (stopThePool && threads.isEmpty()) {
+			synchronized (termination) {
+				termination.notifyAll();
+			}
+		}
+	}
+
+	public void addThreadPoolListener(ThreadPoolListener tpl) {
+		listeners.addElement(tpl);
+	}
+
+	public Enumeration<Thread> getThreads() {
+		return threads.keys();
+	}
+
+	/**
+	 * ExecutorService entry point, same as run() but a stopped pool rejects
+	 * the task with a RejectedExecutionException.
+	 */
+	@Override
+	public void execute(Runnable command) {
+		try {
+			run(command);
+		} catch (IllegalStateException e) {
+			throw new RejectedExecutionException("ThreadPool " + name + " is shut down");
+		}
+	}
+
+	public void run(Runnable r) {
+		if (virtualThreads != null) {
+			if (null == r) {
+				throw new NullPointerException();
+			}
+			startVirtual(r);
+			return;
+		}
+		if (workQueue != null) {
+			if (null == r) {
+				throw new NullPointerException();
+			}
+			QueuedTask task = new QueuedTask(r);
+			if (executionMode == ExecutionMode.WORK_STEALING && pushLocal(task)) {
+				return;
+			}
+			enqueue(task);
+			return;
+		}
+		long submittedAt = metricsEnabled ? System.nanoTime() : 0;
+		ControlRunnable c = findControlRunnable();
+		c.submittedAt = submittedAt;
+		c.runIt(r);
+	}
+
+	//
+	// You may wonder what you see here ... basically I am trying
+	// to maintain a stack of threads. This way locality in time
+	// is kept and there is a better chance to find residues of the
+	// thread in memory next time it runs.
+	//
+
+	/**
+	 * Executes a given Runnable on a thread in the pool, block if needed.
+	 */
+	public void runIt(ThreadPoolRunnable r) {
+		if (null == r) {
+			throw new NullPointerException();
+		}
+
+		if (virtualThreads != null) {
+			startVirtual(new QueuedTask(r));
+			return;
+		}
+		if (workQueue != null) {
+			QueuedTask task = new QueuedTask(r);
+			if (executionMode == ExecutionMode.WORK_STEALING && pushLocal(task)) {
+				return;
+			}
+			enqueue(task);
+			return;
+		}
+		long submittedAt = metricsEnabled ? System.nanoTime() : 0;
+		ControlRunnable c = findControlRunnable();
+		c.submittedAt = submittedAt;
+		c.runIt(r);
+	}
+
+	/**
+	 * QUEUE mode dispatch: the task is queued without taking the pool lock.
+	 * Threads are never opened here; when there are more queued tasks than
+	 * idle threads the monitor is woken to grow the pool. 入队，不获取线程池锁
+	 */
+	private void enqueue(QueuedTask task) {
+		BlockingQueue<Runnable> q = workQueue;
+		if (stopThePool || q == null) {
+			throw new IllegalStateException();
+		}
+		if (!q.offer(task)) {
+			rejectedCount.incrementAndGet();
+			rejectionPolicy.rejected(task.unwrap(), this);
+			return;
+		}
+		if (stopThePool && q.remove(task)) {
+			// Raced with shutdown and no thread will take it.
+			throw new IllegalStateException();
+		}
+		if (executionMode == ExecutionMode.WORK_STEALING && signalWork()) {
+			return;
+		}
+		if (idleWorkers.get() < q.size() && currentThreadCount < maxThreads) {
+			wakeMonitor();
+		}
+	}
+
+	private void wakeMonitor() {
+		MonitorRunnable m = monitor;
+		if (m != null) {
+			m.wakeUp();
+		}
+	}
+
+	/**
+	 * WORK_STEALING mode: a task submitted from one of this pool's threads
+	 * goes to that thread's own deque, without touching any shared lock.
+	 * Running tasks may keep forking after shutdown(); the owner drains its
+	 * deque before it leaves.
+	 *
+	 * @return false if the caller is not a thread of this pool
+	 */
+	private boolean pushLocal(Runnable r) {
+		Thread current = Thread.currentThread();
+		if (!(current instanceof ThreadWithAttributes)) {
+			return false;
+		}
+		Object target = ((ThreadWithAttributes) current).getTarget(this);
+		if (!(target instanceof ControlRunnable)) {
+			return false;
+		}
+		((ControlRunnable) target).localTasks.addFirst(r);
+		if (!signalWork() && currentThreadCount < maxThreads) {
+			// Nobody is parked to steal it, let the monitor decide on growing.
+			wakeMonitor();
+		}
+		return true;
+	}
+
+	/**
+	 * Wake one parked WORK_STEALING thread.
+	 *
+	 * @return false if no thread was parked
+	 */
+	private boolean signalWork() {
+		ControlRunnable c;
+		while ((c = parked.poll()) != null) {
+			if (c.unpark()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Take a task from the tail of another thread's deque, starting at a
+	 * random thread to spread the thieves.
+	 */
+	private Runnable steal(ControlRunnable thief) {
+		Object[] victims = stealers.toArray();
+		int n = victims.length;
+		if (n <= 1) {
+			return null;
+		}
+		int start = ThreadLocalRandom.current().nextInt(n);
+		for (int i = 0; i < n; i++) {
+			ControlRunnable victim = (ControlRunnable) victims[(start + i) % n];
+			if (victim != thief) {
+				Runnable task = victim.localTasks.pollLast();
+				if (task != null) {
+					return task;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find work for a WORK_STEALING thread: its own deque first (newest
+	 * task), then the shared queue, then the other threads' deques (oldest
+	 * task).
+	 */
+	private Runnable findWork(ControlRunnable c) {
+		Runnable task = c.localTasks.pollFirst();
+		if (task == null) {
+			task = workQueue.poll();
+		}
+		if (task == null) {
+			task = steal(c);
+		}
+		return task;
+	}
+
+	/**
+	 * WORK_STEALING mode: some thread has tasks in its deque.
+	 */
+	private boolean hasLocalBacklog() {
+		for (ControlRunnable c : stealers) {
+			if (c.localTasks.peekLast() != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called by the monitor. Samples the queueing delay and the fraction of
+	 * busy threads into a sliding window, then adds threads while there is a
+	 * backlog and either average is too high: a quarter of the current count
+	 * at a time. When woken by a submitter with nothing over the limits yet,
+	 * one thread is added. Shrinking is left to the idle timeout of each
+	 * thread.
+	 *
+	 * In QUEUE and WORK_STEALING mode the backlog is the queued tasks and the
+	 * delay the age of the oldest one; in HANDOFF mode they are the blocked
+	 * submitters and how long submitters have been blocked.
+	 *
+	 * @param signalled
+	 *            The monitor was woken by a submitter
+	 */
+	protected void adjustWorkers(boolean signalled) {
+		BlockingQueue<Runnable> q = workQueue;
+		if (stopThePool) {
+			return;
+		}
+		long delay;
+		int count;
+		int idle;
+		int backlog;
+		if (q == null) {
+			synchronized (this) {
+				if (stopThePool || workQueue != null) {
+					return;
+				}
+				count = currentThreadCount;
+				idle = count - currentThreadsBusy;
+				backlog = waitingSubmitters;
+				delay = backlog > 0 ? Math.max(0, System.nanoTime() - waitingSince) : 0;
+			}
+		} else {
+			Runnable head = q.peek();
+			delay = head instanceof QueuedTask ? Math.max(0, System.nanoTime() - ((QueuedTask) head).queuedAt) : 0;
+			count = currentThreadCount;
+			idle = idleWorkers.get();
+			backlog = q.size();
+			if (backlog == 0 && executionMode == ExecutionMode.WORK_STEALING && idle == 0 && hasLocalBacklog()) {
+				backlog = 1;
+			}
+		}
+		double utilization = count == 0 ? 1 : Math.max(0, count - idle) / (double) count;
+
+		delaySamples[sampleIndex] = delay;
+		utilizationSamples[sampleIndex] = utilization;
+		sampleIndex = (sampleIndex + 1) % SAMPLE_WINDOW;
+		if (sampleCount < SAMPLE_WINDOW) {
+			sampleCount++;
+		}
+		long delaySum = 0;
+		double utilizationSum = 0;
+		for (int i = 0; i < sampleCount; i++) {
+			delaySum += delaySamples[i];
+			utilizationSum += utilizationSamples[i];
+		}
+		long avgDelay = delaySum / sampleCount;
+		double avgUtilization = utilizationSum / sampleCount;
+		averageQueueDelay = avgDelay;
+		averageUtilization = avgUtilization;
+
+		if (backlog <= idle || count >= maxThreads) {
+			return;
+		}
+		int add = 0;
+		if (avgDelay > TimeUnit.MILLISECONDS.toNanos(targetQueueDelay) || avgUtilization >= HIGH_UTILIZATION) {
+			add = Math.max(1, count / 4);
+		} else if (signalled) {
+			add = 1;
+		}
+		if (add > 0) {
+			synchronized (this) {
+				if (!stopThePool && workQueue == q) {
+					openThreads(Math.min(maxThreads, currentThreadCount + add));
+					if (q == null) {
+						// Blocked submitters take the new threads.
+						notifyAll();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for room in the queue, used by RejectionPolicy.BLOCK.
+	 */
+	protected void enqueueBlocking(Runnable r) {
+		if (virtualThreads != null) {
+			acquireBlocking(r);
+			return;
+		}
+		BlockingQueue<Runnable> q = workQueue;
+		if (q == null) {
+			throw new IllegalStateException();
+		}
+		if (!(r instanceof QueuedTask)) {
+			r = new QueuedTask(r);
+		}
+		synchronized (this) {
+			waitingSubmitters++;
+		}
+		try {
+			while (!stopThePool) {
+				if (q.offer(r, 100, TimeUnit.MILLISECONDS)) {
+					if (stopThePool && q.remove(r)) {
+						break;
+					}
+					if (idleWorkers.get() < q.size() && currentThreadCount < maxThreads) {
+						wakeMonitor();
+					}
+					return;
+				}
+			}
+			throw new IllegalStateException();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for queue space", e);
+		} finally {
+			synchronized (this) {
+				waitingSubmitters--;
+			}
+		}
+	}
+
+	/**
+	 * VIRTUAL mode dispatch: start a virtual thread if the limiter has a
+	 * permit, otherwise apply the RejectionPolicy. 虚拟线程派发
+	 */
+	private void startVirtual(Runnable r) {
+		if (stopThePool) {
+			throw new IllegalStateException();
+		}
+		if (!limiter.tryAcquire()) {
+			rejectedCount.incrementAndGet();
+			rejectionPolicy.rejected(r, this);
+			return;
+		}
+		launchVirtual(r);
+	}
+
+	/**
+	 * Wait for a permit, used by RejectionPolicy.BLOCK in VIRTUAL mode.
+	 */
+	private void acquireBlocking(Runnable r) {
+		synchronized (this) {
+			waitingSubmitters++;
+		}
+		try {
+			while (!stopThePool) {
+				if (limiter.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+					launchVirtual(r);
+					return;
+				}
+			}
+			throw new IllegalStateException();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for a permit", e);
+		} finally {
+			synchronized (this) {
+				waitingSubmitters--;
+			}
+		}
+	}
+
+	/**
+	 * Start the task on a new virtual thread, the caller holds a permit.
+	 */
+	private void launchVirtual(Runnable r) {
+		virtualActive.incrementAndGet();
+		try {
+			virtualThreads.newThread(new VirtualTask(this, r)).start();
+		} catch (RuntimeException e) {
+			virtualDone();
+			throw e;
+		} catch (Error e) {
+			virtualDone();
+			throw e;
+		}
+	}
+
+	/**
+	 * A VIRTUAL mode task finished, give back its permit.
+	 */
+	private void virtualDone() {
+		if (virtualActive.decrementAndGet() == 0 && stopThePool) {
+			synchronized (termination) {
+				termination.notifyAll();
+			}
+		}
+		limiter.release();
+	}
+
+	/**
+	 * Called by a QUEUE or WORK_STEALING mode thread that stayed idle for
+	 * workerIdleTimeout. Retires the thread if the pool has more than
+	 * minSpareThreads threads, or more than maxThreads.
+	 *
+	 * @return true if the thread must exit
+	 */
+	protected synchronized boolean retireIdleWorker() {
+		if (stopThePool) {
+			return true;
+		}
+		if (currentThreadCount > maxThreads || currentThreadCount > minSpareThreads) {
+			currentThreadCount--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Called by a HANDOFF mode thread that stayed idle for workerIdleTimeout.
+	 * Takes the thread out of the idle stack if the pool has more than
+	 * minSpareThreads threads, or more than maxThreads. The stack is used
+	 * last in first out, so the threads that time out are the ones at the
+	 * bottom that nobody needed.
+	 *
+	 * @return true if the thread must exit
+	 */
+	protected synchronized boolean retireIdleController(ControlRunnable c) {
+		if (stopThePool || pool == null) {
+			// shutdown() terminates the idle threads itself.
+			return false;
+		}
+		if (currentThreadCount <= maxThreads && currentThreadCount <= minSpareThreads) {
+			return false;
+		}
+		int idle = currentThreadCount - currentThreadsBusy;
+		for (int i = 0; i < idle; i++) {
+			if (pool[i] == c) {
+				System.arraycopy(pool, i + 1, pool, i, idle - i - 1);
+				pool[idle - 1] = null;
+				currentThreadCount--;
+				return true;
+			}
+		}
+		// Already taken by a submitter, the task is on its way.
+		return false;
+	}
+
+	/**
+	 * Called by a QUEUE mode thread that is leaving the pool.
+	 */
+	protected synchronized void workerExit(ControlRunnable c, boolean counted) {
+		if (!counted && !stopThePool && currentThreadCount > 0) {
+			currentThreadCount--;
+		}
+		if (!stopThePool && currentThreadCount == 0 && !workQueue.isEmpty()) {
+			openThreads(1);
+		}
+	}
+
+	/**
+	 * HANDOFF mode: take an idle thread, waiting while all threads are busy.
+	 * The submitter never creates threads itself; when the pool can grow it
+	 * wakes the monitor, which opens them and notifies the waiters.
+	 */
+	private ControlRunnable findControlRunnable() {
+		ControlRunnable c = null;
+
+		if (stopThePool) {
+			throw new IllegalStateException();
+		}
+
+		// Obtain a free thread from the pool.
+		synchronized (this) {
+
+			while (currentThreadsBusy == currentThreadCount) {
+				// All threads are busy
+				if (currentThreadCount < maxThreads) {
+					// Not all threads were open, let the monitor open more.
+					wakeMonitor();
+				}
+
+				// Wait for a thread to become idel.
+				if (waitingSubmitters++ == 0) {
+					waitingSince = System.nanoTime();
+				}
+				try {
+					this.wait();
+				}
+				// was just catch Throwable -- but no other
+				// exceptions can be thrown by wait, right?
+				// So we catch and ignore this one, since
+				// it'll never actually happen, since nowhere
+				// do we say pool.interrupt().
+				catch (InterruptedException e) {
+
+				} finally {
+					waitingSubmitters--;
+				}
+
+				// Pool was stopped. Get away of the pool.
+				if (stopThePool) {
+					break;
+				}
+			}
+			// Pool was stopped. Get away of the pool.
+			if (0 == currentThreadCount || stopThePool) {
+				throw new IllegalStateException();
+			}
+
+			// If we are here it means that there is a free thread. Take it.
+			int pos = currentThreadCount - currentThreadsBusy - 1;
+			c = pool[pos];
+			pool[pos] = null;
+			currentThreadsBusy++;
+
+		}
+		return c;
+	}
+
+	/**
+	 * Stop the thread pool
+	 */
+	public synchronized void shutdown() {
+		if (!stopThePool) {
+			stopThePool = true;
+			unregister();
+			if (monitor != null) {
+				monitor.terminate();
+				monitor = null;
+			}
+			if (workQueue != null) {
+				// Threads drain the queued tasks, then leave.
+				Enumeration<ControlRunnable> workers = threads.elements();
+				while (workers.hasMoreElements()) {
+					workers.nextElement().interruptIfIdle();
+				}
+				currentThreadsBusy = currentThreadCount = 0;
+				notifyAll();
+				return;
+			}
+			for (int i = 0; i < currentThreadCount - currentThreadsBusy; i++) {
+				try {
+					pool[i].terminate();
+				} catch (Throwable t) {
+					/*
+					 * Do nothing... The show must go on, we are shutting down
+					 * the pool and nothing should stop that.
+					 */
+
+				}
+			}
+			currentThreadsBusy = currentThreadCount = 0;
+			pool = null;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Stop the pool, drop the queued tasks and interrupt the running ones.
+	 *
+	 * @return The tasks that were queued and never started
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		List<Runnable> pending = new ArrayList<Runnable>();
+		BlockingQueue<Runnable> q;
+		synchronized (this) {
+			q = workQueue;
+			if (q != null) {
+				q.drainTo(pending);
+			}
+			shutdown();
+		}
+		if (q != null) {
+			q.drainTo(pending);
+		}
+		for (ControlRunnable c : stealers) {
+			Runnable task;
+			while ((task = c.localTasks.pollLast()) != null) {
+				pending.add(task);
+			}
+		}
+		for (int i = 0; i < pending.size(); i++) {
+			Runnable task = pending.get(i);
+			if (task instanceof QueuedTask) {
+				pending.set(i, ((QueuedTask) task).unwrap());
+			}
+		}
+		Enumeration<Thread> workers = getThreads();
+		while (workers.hasMoreElements()) {
+			workers.nextElement().interrupt();
+		}
+		for (Thread t : virtualRunning.keySet()) {
+			t.interrupt();
+		}
+		return pending;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return stopThePool;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return stopThePool && threads.isEmpty() && virtualActive.get() == 0;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (termination) {
+			while (!isTerminated()) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(termination, remaining);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the thread to the pool. Called by threads as they are becoming
+	 * idel.
+	 */
+	protected synchronized void returnController(ControlRunnable c) {
+
+		if (0 == currentThreadCount || stopThePool) {
+			c.terminate();
+			return;
+		}
+
+		if (currentThreadCount > maxThreads) {
+			// maxThreads was lowered at runtime, retire this thread.
+			c.terminate();
+			currentThreadsBusy--;
+			currentThreadCount--;
+			return;
+		}
+
+		// atomic
+		currentThreadsBusy--;
+
+		pool[currentThreadCount - currentThreadsBusy - 1] = c;
+		notify();
+	}
+
+	/**
+	 * Inform the pool that the specific thread finish.
+	 *
+	 * Called by the ControlRunnable.run() when the runnable throws an
+	 * exception.
+	 */
+	protected synchronized void notifyThreadEnd(ControlRunnable c) {
+		currentThreadsBusy--;
+		currentThreadCount--;
+		notify();
+	}
+
+	/*
+	 * Checks for problematic configuration and fix it. The fix provides
+	 * reasonable settings for a single CPU with medium load. 检查有问题的配置和修复它。
+	 * 此修复程序提供了一个单一CPU合理设置 中等负荷。
+	 */
+	protected void adjustLimits() {
+		if (maxThreads <= 0) {
+			// 如果最大线程数小于0则赋予默认线程数
+			maxThreads = MAX_THREADS;
+		} else if (maxThreads < MAX_THREADS_MIN) {
+			// 如果最大线程数小于他的最小阀值,则最大线程数赋予默认值
+
+			maxThreads = MAX_THREADS_MIN;
+		}
+
+		if (maxSpareThreads >= maxThreads) {
+			// 如果最大空闲线程数大于默认值，将赋予默认值
+			maxSpareThreads = maxThreads;
+		}
+
+		if (maxSpareThreads <= 0) {
+			if (1 == maxThreads) {
+				maxSpareThreads = 1;
+			} else {
+				maxSpareThreads = maxThreads / 2;
+			}
+		}
+
+		if (minSpareThreads > maxSpareThreads) {
+			minSpareThreads = maxSpareThreads;
+		}
+
+		if (minSpareThreads <= 0) {
+			if (1 == maxSpareThreads) {
+				minSpareThreads = 1;
+			} else {
+				minSpareThreads = maxSpareThreads / 2;
+			}
+		}
+	}
+
+	/**
+	 * Create missing threads. 创建失踪线程
+	 * 
+	 * @param toOpen
+	 *            Total number of threads we'll have open 线程数开放
+	 */
+	protected void openThreads(int toOpen) {
+
+		if (toOpen > maxThreads) {
+			toOpen = maxThreads;
+		}
+
+		for (int i = currentThreadCount; i < toOpen; i++) {
+			if (workQueue != null) {
+				new ControlRunnable(this);
+			} else {
+				pool[i - currentThreadsBusy] = new ControlRunnable(this);
+			}
+		}
+
+		currentThreadCount = toOpen;
+	}
+
+	/** @deprecated */
+	void log(String s) {
+
+		// loghelper.flush();
+	}
+
+	/**
+	 * Periodically execute an action - cleanup in this case 定期执行清理 监听线程
+	 */
+	public static class MonitorRunnable implements Runnable {
+		ThreadPool p;
+		Thread t;
+		int interval = WORK_WAIT_TIMEOUT;
+		boolean shouldTerminate;
+		/**
+		 * A submitter asked for more threads. 提交方请求扩容
+		 */
+		final AtomicBoolean signalled = new AtomicBoolean();
+
+		MonitorRunnable(ThreadPool p) {
+			this.p = p;
+			this.start();
+		}
+
+		MonitorRunnable(ThreadPool p, int interval) {
+			this.p = p;
+			this.interval = interval;
+			this.start();
+		}
+
+		public void start() {
+			shouldTerminate = false;
+			t = new Thread(this);
+			t.setDaemon(p.getDaemon());
+			t.setName(p.getName() + "-Monitor");
+			t.start();
+		}
+
+		public void setInterval(int i) {
+			this.interval = i;
+		}
+
+		public void run() {
+			while (true) {
+				try {
+
+					// Sleep for a while.
+					synchronized (this) {
+						if (!signalled.get() && !shouldTerminate) {
+							this.wait(interval);
+						}
+					}
+
+					// Check if should terminate.
+					// termination happens when the pool is shutting down.
+					if (shouldTerminate) {
+						break;
+					}
+
+					// Size the pool from the sampled load.
+					p.adjustWorkers(signalled.getAndSet(false));
+
+				} catch (Throwable t) {
+
+				}
+			}
+		}
+
+		/**
+		 * Wake the monitor early to look at the queue. 提前唤醒
+		 */
+		public void wakeUp() {
+			if (signalled.compareAndSet(false, true)) {
+				synchronized (this) {
+					this.notify();
+				}
+			}
+		}
+
+		public void stop() {
+			this.terminate();
+		}
+
+		/**
+		 * Stop the monitor
+		 */
+		public synchronized void terminate() {
+			shouldTerminate = true;
+			this.notify();
+		}
+	}
+
+	/**
+	 * A Thread object that executes various actions ( ThreadPoolRunnable )
+	 * under control of ThreadPool 线程执行对象（ThreadPoolRunnable的各项行动） 控制下的线程池
+	 */
+	public static class ControlRunnable implements Runnable {
+		/**
+		 * ThreadPool where this thread will be returned 线程池在此线程中将被返回
+		 */
+		private ThreadPool p;
+
+		/**
+		 * The thread that executes the actions 线程执行的行动
+		 */
+		private ThreadWithAttributes t;
+
+		/**
+		 * The method that is executed in this thread 认为在这个线程执行的方法
+		 */
+		private ThreadPoolRunnable toRun;
+		
+		
+		private Runnable toRunRunnable;
+
+		/**
+		 * Stop this thread 线程停止标志
+		 */
+		private boolean shouldTerminate;
+
+		/**
+		 * Activate the execution of the action 线程激活标志
+		 */
+		private boolean shouldRun;
+
+		/**
+		 * Per thread data - can be used only if all actions are of the same
+		 * type. A better mechanism is possible ( that would allow association
+		 * of thread data with action type ), but right now it's enough.
+		 * *每个线程的数据-可以使用只有当所有的行动 同一类型。 一个更好的机制是可能的（这将使协会 螺纹行动类型的数据），但现在它是不够的。
+		 * 
+		 */
+		private boolean noThData;
+
+		/**
+		 * QUEUE mode: a task is being run, the thread must not be interrupted
+		 */
+		private boolean running;
+
+		/**
+		 * HANDOFF mode: when the task handed over by runIt() was submitted,
+		 * 0 when metrics are off. Written before runIt().
+		 */
+		long submittedAt;
+
+		/**
+		 * WORK_STEALING mode: tasks submitted by this thread. The owner works
+		 * at the head, thieves take from the tail. 本线程的任务队列
+		 */
+		final ConcurrentLinkedDeque<Runnable> localTasks;
+
+		/**
+		 * WORK_STEALING mode: parked waiting for work
+		 */
+		private final AtomicBoolean parkedFlag = new AtomicBoolean();
+
+		/**
+		 * Start a new thread, with no method in it
+		 */
+		ControlRunnable(ThreadPool p) {
+			toRun = null;
+			shouldTerminate = false;
+			shouldRun = false;
+			this.p = p;
+			t = new ThreadWithAttributes(p, this);
+			t.setDaemon(true);
+			t.setName(p.getName() + "-Processor" + p.getSequence());
+			t.setPriority(p.getThreadPriority());
+			p.addThread(t, this);
+			noThData = true;
+			if (p.executionMode == ExecutionMode.WORK_STEALING) {
+				localTasks = new ConcurrentLinkedDeque<Runnable>();
+				p.stealers.add(this);
+			} else {
+				localTasks = null;
+			}
+			t.start();
+		}
+
+		public void run() {
+			boolean _shouldRun = false;
+			boolean _shouldTerminate = false;
+			ThreadPoolRunnable _toRun = null;
+			long _submittedAt = 0;
+			long _startedAt = 0;
+			boolean _failed = false;
+			try {
+				if (p.workQueue != null) {
+					if (localTasks != null) {
+						runStealing();
+					} else {
+						runQueue(p.workQueue);
+					}
+					return;
+				}
+				while (true) {
+					try {
+						/* Wait for work. */
+						boolean _idle = false;
+						synchronized (this) {
+							long deadline = System.currentTimeMillis() + p.workerIdleTimeout;
+							while (!shouldRun && !shouldTerminate) {
+								long left = deadline - System.currentTimeMillis();
+								if (left <= 0) {
+									_idle = true;
+									break;
+								}
+								this.wait(left);
+							}
+							_shouldRun = shouldRun;
+							_shouldTerminate = shouldTerminate;
+							_toRun = toRun;
+							_submittedAt = submittedAt;
+						}
+
+						if (_idle) {
+							// Not under our lock: the pool lock is taken
+							// first when work is handed over.
+							if (p.retireIdleController(this)) {
+								break;
+							}
+							continue;
+						}
+
+						if (_shouldTerminate) {
+
+							break;
+						}
+
+						/* Check if should execute a runnable. */
+						try {
+							if (noThData) {
+								if (_toRun != null) {
+									Object thData[] = _toRun.getInitData();
+									t.setThreadData(p, thData);
+
+								}
+								noThData = false;
+							}
+
+							if (_shouldRun) {
+								_startedAt = p.metricsEnabled ? System.nanoTime() : 0;
+								if (_toRun != null) {
+									_toRun.runIt(t.getThreadData(p));
+								} else if (toRunRunnable != null) {
+									toRunRunnable.run();
+								} else {
+
+								}
+							}
+						} catch (Throwable t) {
+
+							/*
+							 * The runnable throw an exception (can be even a
+							 * ThreadDeath), signalling that the thread die.
+							 *
+							 * The meaning is that we should release the thread
+							 * from the pool.
+							 */
+							_shouldTerminate = true;
+							_shouldRun = false;
+							_failed = true;
+							p.notifyThreadEnd(this);
+						} finally {
+							if (_startedAt != 0) {
+								t.endStage();
+								p.taskDone(_submittedAt, _startedAt, _failed);
+								_startedAt = 0;
+							}
+							if (_shouldRun) {
+								shouldRun = false;
+								/*
+								 * Notify the pool that the thread is now idle.
+								 */
+								p.returnController(this);
+							}
+						}
+
+						/*
+						 * Check if should terminate. termination happens when
+						 * the pool is shutting down.
+						 */
+						if (_shouldTerminate) {
+							break;
+						}
+					} catch (InterruptedException ie) { /*
+														 * for the wait
+														 * operation
+														 */
+						// can never happen, since we don't call interrupt
+
+					}
+				}
+			} finally {
+				p.removeThread(Thread.currentThread());
+			}
+		}
+
+		/**
+		 * QUEUE mode loop: take tasks from the queue until the pool stops or
+		 * this thread is retired. Tasks run back to back without going
+		 * through the pool lock.
+		 */
+		private void runQueue(BlockingQueue<Runnable> queue) {
+			boolean counted = false;
+			try {
+				while (true) {
+					Runnable task;
+					if (p.stopThePool) {
+						// Drain what was submitted before shutdown.
+						task = queue.poll();
+						if (task == null) {
+							break;
+						}
+					} else {
+						p.idleWorkers.incrementAndGet();
+						try {
+							task = queue.poll(p.workerIdleTimeout, TimeUnit.MILLISECONDS);
+						} catch (InterruptedException e) {
+							continue;
+						} finally {
+							p.idleWorkers.decrementAndGet();
+						}
+					}
+					if (task == null) {
+						if (p.retireIdleWorker()) {
+							counted = true;
+							break;
+						}
+						continue;
+					}
+					runTask(task);
+				}
+			} finally {
+				p.workerExit(this, counted);
+			}
+		}
+
+		/**
+		 * WORK_STEALING mode loop: run the own tasks newest first, then the
+		 * shared queue, then steal; park when there is nothing to do. After
+		 * shutdown the thread leaves once no work can be found.
+		 */
+		private void runStealing() {
+			boolean counted = false;
+			try {
+				while (true) {
+					Runnable task = p.findWork(this);
+					if (task != null) {
+						runTask(task);
+						continue;
+					}
+					if (p.stopThePool) {
+						break;
+					}
+					// Announce the park, then look again so a task pushed or a
+					// shutdown in between is not missed. An old interrupt would
+					// make parkNanos() return at once, so it is cleared first;
+					// shutdown() sets stopThePool before it interrupts, so one
+					// meant for shutdown is seen by the check below.
+					parkedFlag.set(true);
+					p.parked.offer(this);
+					Thread.interrupted();
+					if (p.stopThePool || (task = p.findWork(this)) != null) {
+						if (parkedFlag.compareAndSet(true, false)) {
+							p.parked.remove(this);
+						}
+						if (task != null) {
+							runTask(task);
+						}
+						continue;
+					}
+					p.idleWorkers.incrementAndGet();
+					try {
+						LockSupport.parkNanos(p, TimeUnit.MILLISECONDS.toNanos(p.workerIdleTimeout));
+					} finally {
+						p.idleWorkers.decrementAndGet();
+					}
+					if (parkedFlag.compareAndSet(true, false)) {
+						// Not woken by signalWork(): timed out or shut down.
+						p.parked.remove(this);
+						if (!p.stopThePool && p.retireIdleWorker()) {
+							counted = true;
+							break;
+						}
+					}
+				}
+			} finally {
+				p.stealers.remove(this);
+				p.workerExit(this, counted);
+			}
+		}
+
+		/**
+		 * @return true if the thread was parked and is now woken
+		 */
+		boolean unpark() {
+			if (parkedFlag.compareAndSet(true, false)) {
+				LockSupport.unpark(t);
+				return true;
+			}
+			return false;
+		}
+
+		private void runTask(Runnable task) {
+			synchronized (this) {
+				running = true;
+				// Clear an interrupt meant for an idle thread.
+				Thread.interrupted();
+			}
+			QueuedTask queued = (QueuedTask) task;
+			long startedAt = p.metricsEnabled ? System.nanoTime() : 0;
+			boolean failure = false;
+			try {
+				if (queued.toRun != null) {
+					runThreadPoolRunnable(queued.toRun);
+				} else {
+					queued.runnable.run();
+				}
+			} catch (Throwable t) {
+				// Unlike HANDOFF mode the thread stays in the pool.
+				failure = true;
+				t.printStackTrace();
+			} finally {
+				if (startedAt != 0) {
+					t.endStage();
+					p.taskDone(queued.queuedAt, startedAt, failure);
+				}
+				synchronized (this) {
+					running = false;
+				}
+			}
+		}
+
+		private void runThreadPoolRunnable(ThreadPoolRunnable toRun) {
+			if (noThData) {
+				t.setThreadData(p, toRun.getInitData());
+				noThData = false;
+			}
+			toRun.runIt(t.getThreadData(p));
+		}
+
+		/**
+		 * Wake the thread if it is waiting on the QUEUE mode task queue.
+		 */
+		synchronized void interruptIfIdle() {
+			if (!running) {
+				t.interrupt();
+			}
+		}
+
+		/**
+		 * Run a task
+		 *
+		 * @param toRun
+		 */
+		public synchronized void runIt(Runnable toRun) {
+			this.toRunRunnable = toRun;
+			// Do not re-init, the whole idea is to run init only once per
+			// thread - the pool is supposed to run a single task, that is
+			// initialized once.
+			// noThData = true;
+			shouldRun = true;
+			this.notify();
+		}
+
+		/**
+		 * Run a task
+		 *
+		 * @param toRun
+		 */
+		public synchronized void runIt(ThreadPoolRunnable toRun) {
+			this.toRun = toRun;
+			// Do not re-init, the whole idea is to run init only once per
+			// thread - the pool is supposed to run a single task, that is
+			// initialized once.
+			// noThData = true;
+			shouldRun = true;
+			this.notify();
+		}
+
+		public void stop() {
+			this.terminate();
+		}
+
+		@SuppressWarnings("deprecation")
+		public void kill() {
+			t.stop();
+		}
+
+		public synchronized void terminate() {
+			shouldTerminate = true;
+			this.notify();
+		}
+	}
+
+	/**
+	 * Debug display of the stage of each thread. The return is html style, for
+	 * display in the console ( it can be easily parsed too ).
+	 *
+	 * @return The thread status display
+	 */
+	public String threadStatusString() {
+		StringBuffer sb = new StringBuffer();
+		Iterator<Thread> it = threads.keySet().iterator();
+		sb.append("<ul>");
+		while (it.hasNext()) {
+			sb.append("<li>");
+			ThreadWithAttributes twa = (ThreadWithAttributes) it.next();
+			sb.append(twa.getCurrentStage(this)).append(" ");
+			sb.append(twa.getParam(this));
+			sb.append("</li>\n");
+		}
+		sb.append("</ul>");
+		return sb.toString();
+	}
+
+	/**
+	 * Return an array with the status of each thread. The status indicates the
+	 * current request processing stage ( for tomcat ) or whatever the thread is
+	 * doing ( if the application using TP provide this info )
+	 *
+	 * @return The status of all threads
+	 */
+	public String[] getThreadStatus() {
+		String status[] = new String[threads.size()];
+		Iterator<Thread> it = threads.keySet().iterator();
+		for (int i = 0; (i < status.length && it.hasNext()); i++) {
+			ThreadWithAttributes twa = (ThreadWithAttributes) it.next();
+			status[i] = twa.getCurrentStage(this);
+		}
+		return status;
+	}
+
+	/**
+	 * Return an array with the current "param"
+	 * thread. This is typically the last request.
+	 *
+	 * @return The params of all threads
+	 */
+	public String[] getThreadParam() {
+		String status[] = new String[threads.size()];
+		Iterator<Thread> it = threads.keySet().iterator();
+		for (int i = 0; (i < status.length && it.hasNext()); i++) {
+			ThreadWithAttributes twa = (ThreadWithAttributes) it.next();
+			Object o = twa.getParam(this);
+			status[i] = (o == null) ? null : o.toString();
+		}
+		return status;
+	}
+
+	/**
+	 * How tasks are handed to the threads of the pool.
+	 */
+	public static enum ExecutionMode {
+		/**
+		 * Each task is handed to an idle thread; the caller blocks while all
+		 * threads are busy, and the monitor opens more threads up to
+		 * maxThreads from how long callers have been blocked. 直接交给空闲线程，无空闲线程时调用方阻塞
+		 */
+		HANDOFF,
+		/**
+		 * Tasks go to a bounded queue that the threads pull from; a full
+		 * queue is handled by the RejectionPolicy. 放入有界队列，由线程拉取
+		 */
+		QUEUE,
+		/**
+		 * Like QUEUE for tasks submitted from outside the pool, but a task
+		 * submitted by a pool thread goes to that thread's own deque and idle
+		 * threads steal from the others. Suited to tasks that fork subtasks.
+		 * 工作窃取，池内线程提交的任务放入本线程队列
+		 */
+		WORK_STEALING,
+		/**
+		 * Each task runs on its own virtual thread (Java 21), at most
+		 * maxThreads at a time; beyond that the RejectionPolicy applies. For
+		 * tasks that mostly block, e.g. on JDBC. Tasks find their attributes
+		 * in TaskContext.current() instead of ThreadWithAttributes.
+		 * 每个任务一个虚拟线程，maxThreads为并发上限
+		 */
+		VIRTUAL
+	}
+
+	/**
+	 * Handles a task that cannot be queued because the QUEUE mode task queue
+	 * is full. 队列满时的处理策略
+	 */
+	public static interface RejectionPolicy {
+
+		/**
+		 * Throw a RejectedExecutionException. 抛出异常
+		 */
+		public static final RejectionPolicy ABORT = new RejectionPolicy() {
+			public void rejected(Runnable r, ThreadPool tp) {
+				throw new RejectedExecutionException("Task queue of " + tp.getName() + " is full");
+			}
+		};
+
+		/**
+		 * Run the task in the submitting thread. 由提交线程执行
+		 */
+		public static final RejectionPolicy CALLER_RUNS = new RejectionPolicy() {
+			public void rejected(Runnable r, ThreadPool tp) {
+				r.run();
+			}
+		};
+
+		/**
+		 * Silently drop the task. 丢弃
+		 */
+		public static final RejectionPolicy DISCARD = new RejectionPolicy() {
+			public void rejected(Runnable r, ThreadPool tp) {
+			}
+		};
+
+		/**
+		 * Block the submitter until there is room in the queue, like HANDOFF
+		 * mode does when all threads are busy. 阻塞直到队列有空位
+		 */
+		public static final RejectionPolicy BLOCK = new RejectionPolicy() {
+			public void rejected(Runnable r, ThreadPool tp) {
+				tp.enqueueBlocking(r);
+			}
+		};
+
+		public void rejected(Runnable r, ThreadPool tp);
+	}
+
+	/**
+	 * Semaphore whose permits can be reduced when maxThreads is lowered.
+	 */
+	static class Limiter extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		Limiter(int permits) {
+			super(permits);
+		}
+
+		void reduce(int reduction) {
+			reducePermits(reduction);
+		}
+	}
+
+	/**
+	 * Runs one VIRTUAL mode task with a recycled TaskContext.
+	 */
+	static class VirtualTask implements Runnable {
+		private final ThreadPool p;
+		private final Runnable task;
+		private final long submittedAt;
+
+		VirtualTask(ThreadPool p, Runnable task) {
+			this.p = p;
+			this.task = task;
+			this.submittedAt = p.metricsEnabled ? System.nanoTime() : 0;
+		}
+
+		public void run() {
+			Thread current = Thread.currentThread();
+			TaskContext ctx = p.contexts.poll();
+			if (ctx == null) {
+				ctx = new TaskContext(p);
+			}
+			p.virtualRunning.put(current, ctx);
+			TaskContext.bind(ctx);
+			long startedAt = p.metricsEnabled ? System.nanoTime() : 0;
+			boolean failure = false;
+			try {
+				if (task instanceof QueuedTask && ((QueuedTask) task).toRun != null) {
+					ThreadPoolRunnable toRun = ((QueuedTask) task).toRun;
+					if (ctx.getThreadData(p) == null) {
+						ctx.setThreadData(p, toRun.getInitData());
+					}
+					toRun.runIt(ctx.getThreadData(p));
+				} else {
+					task.run();
+				}
+			} catch (Throwable t) {
+				failure = true;
+				t.printStackTrace();
+			} finally {
+				ctx.release();
+				p.taskDone(submittedAt, startedAt, failure);
+				p.contexts.offer(ctx);
+				p.virtualRunning.remove(current);
+				p.virtualDone();
+			}
+		}
+	}
+
+	/**
+	 * A task queued in QUEUE, WORK_STEALING or VIRTUAL mode with the time it
+	 * was submitted. A ThreadPoolRunnable is run with the thread data of the
+	 * thread that takes it.
+	 */
+	static class QueuedTask implements Runnable {
+		final Runnable runnable;
+		final ThreadPoolRunnable toRun;
+		final long queuedAt = System.nanoTime();
+
+		QueuedTask(Runnable runnable) {
+			this.runnable = runnable;
+			this.toRun = null;
+		}
+
+		QueuedTask(ThreadPoolRunnable toRun) {
+			this.runnable = null;
+			this.toRun = toRun;
+		}
+
+		/**
+		 * Run outside a pool thread, e.g. by RejectionPolicy.CALLER_RUNS. There
+		 * is no per-thread data here, so the task gets fresh init data.
+		 */
+		public void run() {
+			if (toRun != null) {
+				toRun.runIt(toRun.getInitData());
+			} else {
+				runnable.run();
+			}
+		}
+
+		/**
+		 * The task as the submitter sees it, for rejection and shutdownNow().
+		 */
+		Runnable unwrap() {
+			return runnable != null ? runnable : this;
+		}
+	}
+
+	/**
+	 * Interface to allow applications to be notified when a threads are created
+	 * and stopped.
+	 */
+	public static interface ThreadPoolListener {
+		public void threadStart(ThreadPool tp, Thread t);
+
+		public void threadEnd(ThreadPool tp, Thread t);
+	}
+
+}
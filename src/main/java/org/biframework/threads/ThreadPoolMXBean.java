@@ -0,0 +1,87 @@
+package org.biframework.threads;
+
+import org.biframework.threads.ThreadPool.ExecutionMode;
+
+/**
+ * JMX management interface of a ThreadPool. Exposes live gauges and allows
+ * the thread limits to be changed while the pool is running.
+ */
+public interface ThreadPoolMXBean {
+
+	public String getName();
+
+	public int getCurrentThreadCount();
+
+	public int getCurrentThreadsBusy();
+
+	/**
+	 * Number of idle threads waiting for work.
+	 */
+	public int getCurrentThreadsIdle();
+
+	/**
+	 * Number of callers blocked waiting for a free thread.
+	 */
+	public int getWaitingSubmitters();
+
+	/**
+	 * HANDOFF, QUEUE, WORK_STEALING or VIRTUAL.
+	 */
+	public ExecutionMode getExecutionMode();
+
+	/**
+	 * Number of tasks waiting in the QUEUE mode task queue.
+	 */
+	public int getQueueSize();
+
+	public int getQueueCapacity();
+
+	/**
+	 * Number of tasks that found the queue full.
+	 */
+	public long getRejectedCount();
+
+	/**
+	 * Average age in milliseconds of the oldest queued task over the
+	 * monitor's sampling window.
+	 */
+	public double getQueueDelay();
+
+	/**
+	 * Average fraction of busy threads over the sampling window.
+	 */
+	public double getUtilization();
+
+	public boolean isMetricsEnabled();
+
+	public void setMetricsEnabled(boolean metricsEnabled);
+
+	/**
+	 * Tasks finished since metrics were enabled, see getMetrics() for the
+	 * timings.
+	 */
+	public long getCompletedTaskCount();
+
+	public long getFailedTaskCount();
+
+	public long getWorkerIdleTimeout();
+
+	public void setWorkerIdleTimeout(long workerIdleTimeout);
+
+	public long getTargetQueueDelay();
+
+	public void setTargetQueueDelay(long targetQueueDelay);
+
+	public int getMaxThreads();
+
+	public void setMaxThreads(int maxThreads);
+
+	public int getMinSpareThreads();
+
+	public void setMinSpareThreads(int minSpareThreads);
+
+	public int getMaxSpareThreads();
+
+	public void setMaxSpareThreads(int maxSpareThreads);
+
+}
@@ -0,0 +1,263 @@
+package org.biframework.threads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.taylor.metrics.LatencyHistogram;
+
+/**
+ * Task timings of a ThreadPool: how long tasks waited before a thread took
+ * them, how long they ran, how many failed, and how long they spent in each
+ * stage they reported with setCurrentStage(). Times are recorded in nanos
+ * into LatencyHistograms, so recording is a few adds with no lock.
+ *
+ * Recording is off until ThreadPool.setMetricsEnabled(true); the snapshot
+ * from ThreadPool.getMetrics() can be taken at any time.
+ */
+public class ThreadPoolMetrics {
+
+	/**
+	 * Stage names are expected to be a small fixed set. Past this many,
+	 * new names are counted under OTHER_STAGE. 阶段名数量上限
+	 */
+	public static final int MAX_STAGES = 256;
+
+	public static final String OTHER_STAGE = "(other)";
+
+	private final LatencyHistogram queueWait = new LatencyHistogram();
+
+	private final LatencyHistogram runTime = new LatencyHistogram();
+
+	private final LongAdder completed = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	private final ConcurrentHashMap<String, LatencyHistogram> stages = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * Completed count and time of the previous snapshot, for throughput.
+	 */
+	private long lastSnapshotAt = System.nanoTime();
+	private long lastCompleted;
+
+	/**
+	 * @param waitNanos
+	 *            from submission to the start of the task
+	 * @param runNanos
+	 *            time spent running the task
+	 * @param failure
+	 *            the task threw
+	 */
+	void recordTask(long waitNanos, long runNanos, boolean failure) {
+		queueWait.record(waitNanos);
+		runTime.record(runNanos);
+		completed.increment();
+		if (failure) {
+			failed.increment();
+		}
+	}
+
+	void recordStage(String stage, long nanos) {
+		LatencyHistogram h = stages.get(stage);
+		if (h == null) {
+			if (stages.size() >= MAX_STAGES) {
+				stage = OTHER_STAGE;
+			}
+			h = stages.get(stage);
+			if (h == null) {
+				LatencyHistogram created = new LatencyHistogram();
+				h = stages.putIfAbsent(stage, created);
+				if (h == null) {
+					h = created;
+				}
+			}
+		}
+		h.record(nanos);
+	}
+
+	long getCompletedCount() {
+		return completed.sum();
+	}
+
+	long getFailedCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * Take a snapshot. The throughput is measured since the previous call.
+	 */
+	synchronized Snapshot snapshot(long rejected, List<ActiveStage> active) {
+		long now = System.nanoTime();
+		long done = completed.sum();
+		double elapsed = (now - lastSnapshotAt) / 1e9;
+		double throughput = elapsed > 0 ? (done - lastCompleted) / elapsed : 0;
+		lastSnapshotAt = now;
+		lastCompleted = done;
+		Map<String, LatencyHistogram.Snapshot> stageSnapshots = new TreeMap<String, LatencyHistogram.Snapshot>();
+		for (Map.Entry<String, LatencyHistogram> e : stages.entrySet()) {
+			stageSnapshots.put(e.getKey(), e.getValue().snapshot());
+		}
+		return new Snapshot(done, failed.sum(), rejected, throughput, queueWait.snapshot(), runTime.snapshot(),
+				stageSnapshots, active);
+	}
+
+	/**
+	 * Point in time view of the pool metrics. All times are in nanos.
+	 */
+	public static final class Snapshot {
+		private final long completedCount;
+		private final long failedCount;
+		private final long rejectedCount;
+		private final double throughput;
+		private final LatencyHistogram.Snapshot queueWait;
+		private final LatencyHistogram.Snapshot runTime;
+		private final Map<String, LatencyHistogram.Snapshot> stages;
+		private final List<ActiveStage> activeStages;
+
+		Snapshot(long completedCount, long failedCount, long rejectedCount, double throughput,
+				LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot runTime,
+				Map<String, LatencyHistogram.Snapshot> stages, List<ActiveStage> activeStages) {
+			this.completedCount = completedCount;
+			this.failedCount = failedCount;
+			this.rejectedCount = rejectedCount;
+			this.throughput = throughput;
+			this.queueWait = queueWait;
+			this.runTime = runTime;
+			this.stages = Collections.unmodifiableMap(stages);
+			this.activeStages = Collections.unmodifiableList(activeStages);
+		}
+
+		/**
+		 * Tasks that finished, including the failed ones.
+		 */
+		public long getCompletedCount() {
+			return completedCount;
+		}
+
+		/**
+		 * Tasks that threw. Tasks given to submit() report their exception
+		 * through the Future and are not counted here.
+		 */
+		public long getFailedCount() {
+			return failedCount;
+		}
+
+		public long getRejectedCount() {
+			return rejectedCount;
+		}
+
+		/**
+		 * Completed tasks per second since the previous snapshot.
+		 */
+		public double getThroughput() {
+			return throughput;
+		}
+
+		/**
+		 * From submission to the start of the task. In HANDOFF mode this is
+		 * the time the submitter waited for a free thread.
+		 */
+		public LatencyHistogram.Snapshot getQueueWait() {
+			return queueWait;
+		}
+
+		public LatencyHistogram.Snapshot getRunTime() {
+			return runTime;
+		}
+
+		/**
+		 * Time spent in each stage, by stage name. A stage ends when the task
+		 * sets the next one or returns.
+		 */
+		public Map<String, LatencyHistogram.Snapshot> getStages() {
+			return stages;
+		}
+
+		/**
+		 * The stage every running task is in right now, longest first.
+		 */
+		public List<ActiveStage> getActiveStages() {
+			return activeStages;
+		}
+
+		/**
+		 * Stage names ordered by total time spent in them, highest first.
+		 */
+		public List<String> getSlowestStages() {
+			List<String> names = new ArrayList<String>(stages.keySet());
+			Collections.sort(names, (a, b) -> Double.compare(total(stages.get(b)), total(stages.get(a))));
+			return names;
+		}
+
+		private static double total(LatencyHistogram.Snapshot s) {
+			return s.getMean() * s.getCount();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("completed=").append(completedCount).append(", failed=").append(failedCount)
+					.append(", rejected=").append(rejectedCount).append(", throughput=")
+					.append(String.format("%.1f/s", throughput)).append('\n');
+			sb.append("queueWait: ").append(queueWait).append('\n');
+			sb.append("runTime: ").append(runTime).append('\n');
+			for (String stage : getSlowestStages()) {
+				sb.append("stage ").append(stage).append(": ").append(stages.get(stage)).append('\n');
+			}
+			for (ActiveStage a : activeStages) {
+				sb.append("active ").append(a).append('\n');
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * The stage a running task is in.
+	 */
+	public static final class ActiveStage {
+		private final String threadName;
+		private final String stage;
+		private final Object param;
+		private final long elapsed;
+
+		ActiveStage(String threadName, String stage, Object param, long elapsed) {
+			this.threadName = threadName;
+			this.stage = stage;
+			this.param = param;
+			this.elapsed = elapsed;
+		}
+
+		public String getThreadName() {
+			return threadName;
+		}
+
+		public String getStage() {
+			return stage;
+		}
+
+		/**
+		 * What setParam() was given, typically the request.
+		 */
+		public Object getParam() {
+			return param;
+		}
+
+		/**
+		 * Nanos since the stage was entered.
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return threadName + " " + stage + " " + param + " " + (elapsed / 1000000) + "ms";
+		}
+	}
+
+}
@@ -1,84 +1,119 @@
-package org.biframework.threads;
-
-import java.util.Hashtable;
-
-/** Special thread that allows storing of attributes and notes.
- *  A guard is used to prevent untrusted code from accessing the
- *  attributes.
- *
- *  This avoids hash lookups and provide something very similar
- * with ThreadLocal ( but compatible with JDK1.1 and faster on
- * JDK < 1.4 ).
- *
- * The main use is to store 'state' for monitoring ( like "processing
- * request 'GET /' ").
- */
-public class ThreadWithAttributes extends Thread {
-    
-    private Object control;
-    public static int MAX_NOTES=16;
-    private Object notes[]=new Object[MAX_NOTES];
-    private Hashtable<Object, Object> attributes=new Hashtable<Object, Object>();
-    private String currentStage;
-    private Object param;
-    
-    private Object thData[];
-
-    public ThreadWithAttributes(Object control, Runnable r) {
-        super(r);
-        this.control=control;
-    }
-    
-    public final Object[] getThreadData(Object control ) {
-        return thData;
-    }
-    
-    public final void setThreadData(Object control, Object thData[] ) {
-        this.thData=thData;
-    }
-
-    /** Notes - for attributes that need fast access ( array )
-     * The application is responsible for id management
-     */
-    public final void setNote( Object control, int id, Object value ) {
-        if( this.control != control ) return;
-        notes[id]=value;
-    }
-
-    /** Information about the curent performed operation
-     */
-    public final String getCurrentStage(Object control) {
-        if( this.control != control ) return null;
-        return currentStage;
-    }
-
-    /** Information about the current request ( or the main object
-     * we are processing )
-     */
-    public final Object getParam(Object control) {
-        if( this.control != control ) return null;
-        return param;
-    }
-
-    public final void setCurrentStage(Object control, String currentStage) {
-        if( this.control != control ) return;
-        this.currentStage = currentStage;
-    }
-
-    public final void setParam( Object control, Object param ) {
-        if( this.control != control ) return;
-        this.param=param;
-    }
-
-    public final Object getNote(Object control, int id ) {
-        if( this.control != control ) return null;
-        return notes[id];
-    }
-
-    /** Generic attributes. You'll need a hashtable lookup -
-     * you can use notes for array access.
-     */
-    public final Hashtable<Object, Object> getAttributes(Object control) {
-        return attributes;
-    }
-}
+package org.biframework.threads;
+
+import java.util.Hashtable;
+
+/** Special thread that allows storing of attributes and notes.
+ *  A guard is used to prevent untrusted code from accessing the
+ *  attributes.
+ *
+ *  This avoids hash lookups and provide something very similar
+ * with ThreadLocal ( but compatible with JDK1.1 and faster on
+ * JDK < 1.4 ).
+ *
+ * The main use is to store 'state' for monitoring ( like "processing
+ * request 'GET /' ").
+ *
+ * Virtual threads cannot extend it; a VIRTUAL mode pool gives its tasks
+ * a TaskContext with the same accessors instead.
+ */
+public class ThreadWithAttributes extends Thread {
+    
+    private Object control;
+    public static int MAX_NOTES=16;
+    private Object notes[]=new Object[MAX_NOTES];
+    private Hashtable<Object, Object> attributes=new Hashtable<Object, Object>();
+    private String currentStage;
+    private Object param;
+    private volatile long stageStartedAt;
+    
+    private Object thData[];
+
+    private final Runnable target;
+
+    public ThreadWithAttributes(Object control, Runnable r) {
+        super(r);
+        this.control=control;
+        this.target=r;
+    }
+
+    /** The Runnable this thread was started with, used by the pool to find
+     *  the controller of the current thread without a lookup.
+     */
+    public final Runnable getTarget(Object control) {
+        if( this.control != control ) return null;
+        return target;
+    }
+    
+    public final Object[] getThreadData(Object control ) {
+        return thData;
+    }
+    
+    public final void setThreadData(Object control, Object thData[] ) {
+        this.thData=thData;
+    }
+
+    /** Notes - for attributes that need fast access ( array )
+     * The application is responsible for id management
+     */
+    public final void setNote( Object control, int id, Object value ) {
+        if( this.control != control ) return;
+        notes[id]=value;
+    }
+
+    /** Information about the curent performed operation
+     */
+    public final String getCurrentStage(Object control) {
+        if( this.control != control ) return null;
+        return currentStage;
+    }
+
+    /** Information about the current request ( or the main object
+     * we are processing )
+     */
+    public final Object getParam(Object control) {
+        if( this.control != control ) return null;
+        return param;
+    }
+
+    /** Enter a new stage. When the pool records metrics the time spent in
+     *  the previous stage is recorded under its name.
+     */
+    public final void setCurrentStage(Object control, String currentStage) {
+        if( this.control != control ) return;
+        stageStartedAt = ThreadPool.stageChanged(control, this.currentStage, stageStartedAt);
+        this.currentStage = currentStage;
+    }
+
+    /** The task returned: close the timing of its last stage. The stage
+     *  name stays for the status display.
+     */
+    final void endStage() {
+        if( stageStartedAt == 0 ) return;
+        ThreadPool.stageChanged(control, currentStage, stageStartedAt);
+        stageStartedAt = 0;
+    }
+
+    /** System.nanoTime() when the current stage was entered, 0 when it is
+     *  not being timed.
+     */
+    final long getStageStartedAt() {
+        return stageStartedAt;
+    }
+
+    public final void setParam( Object control, Object param ) {
+        if( this.control != control ) return;
+        this.param=param;
+    }
+
+    public final Object getNote(Object control, int id ) {
+        if( this.control != control ) return null;
+        return notes[id];
+    }
+
+    /** Generic attributes. You'll need a hashtable lookup -
+     * you can use notes for array access.
+     */
+    public final Hashtable<Object, Object> getAttributes(Object control) {
+        return attributes;
+    }
+}
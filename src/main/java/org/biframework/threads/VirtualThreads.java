@@ -0,0 +1,57 @@
+package org.biframework.threads;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (Java 21) from code compiled for Java 8. The
+ * builder methods are looked up once; on older runtimes isSupported()
+ * returns false.
+ */
+final class VirtualThreads {
+
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method FACTORY;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+		} catch (ReflectiveOperationException e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+	}
+
+	private VirtualThreads() {
+	}
+
+	static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * A factory of unstarted virtual threads named prefix0, prefix1, ...
+	 */
+	static ThreadFactory newFactory(String prefix) {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = NAME.invoke(builder, prefix, 0L);
+			return (ThreadFactory) FACTORY.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Cannot create virtual threads", e);
+		}
+	}
+
+}
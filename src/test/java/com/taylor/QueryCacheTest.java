@@ -0,0 +1,159 @@
+package com.taylor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.taylor.stub.StubDatabase;
+import com.taylor.stub.StubDriver;
+
+/**
+ * @ClassName: QueryCacheTest
+ * @Function: QueryCache读表和写表的解析，以及写表后缓存失效
+ * @author Taylor
+ */
+public class QueryCacheTest {
+
+	private MyPoolDataSource dataSource;
+
+	@After
+	public void tearDown() {
+		if (dataSource != null) {
+			dataSource.close();
+			StubDatabase.remove("querycache");
+		}
+	}
+
+	@Test
+	public void readsFromListAndAliases() {
+		assertTables("select * from users where id = ?", "users");
+		assertTables("select * from users u, orders as o where u.id = o.user_id", "users", "orders");
+		assertTables("select 1", new String[0]);
+	}
+
+	@Test
+	public void readsQuotedIdentifiers() {
+		assertTables("select * from `Users` u", "users");
+		assertTables("select * from \"Order Items\" where id = ?", "order items");
+		assertTables("select * from [dbo].[Accounts] a", "accounts");
+	}
+
+	@Test
+	public void readsSchemaQualifiedNames() {
+		assertTables("select * from shop.orders o join shop.`items` i on o.id = i.order_id", "orders", "items");
+	}
+
+	@Test
+	public void ignoresCommentsAndStringLiterals() {
+		assertTables("select * /* from secret */ from users -- from other\n where name = 'from x'", "users");
+		assertTables("select * from users # join audit\n where id = ?", "users");
+	}
+
+	@Test
+	public void readsJoins() {
+		assertTables("select * from a left outer join b on a.id = b.a_id inner join c using (id), d where a.x = ?", "a",
+				"b", "c", "d");
+		assertTables("select * from a join b on (a.id = b.id and b.flag in (1, 2)) cross join c", "a", "b", "c");
+	}
+
+	@Test
+	public void readsSubqueries() {
+		assertTables("select * from (select user_id from orders) t join users u on u.id = t.user_id", "orders",
+				"users");
+		assertTables("select * from users where id in (select user_id from orders where total > (select 1 from dual))",
+				"users", "orders", "dual");
+	}
+
+	@Test
+	public void unparseableQueriesHaveNoTables() {
+		assertNull(QueryCache.readTables("select * from"));
+		assertNull(QueryCache.readTables("select * from users, "));
+		assertNull(QueryCache.readTables("select * from users /* unterminated"));
+		assertNull(QueryCache.readTables("select * from `users"));
+		assertNull(QueryCache.readTables("select * from (select id from orders"));
+	}
+
+	@Test
+	public void writeTableOfEachStatement() {
+		assertEquals("users", QueryCache.writeTable("INSERT INTO users (id) VALUES (?)"));
+		assertEquals("users", QueryCache.writeTable("insert ignore into users select * from staging"));
+		assertEquals("users", QueryCache.writeTable("REPLACE INTO users VALUES (?)"));
+		assertEquals("users", QueryCache.writeTable("update users set name = ? where id = ?"));
+		assertEquals("users", QueryCache.writeTable("update low_priority users u set u.name = ?"));
+		assertEquals("users", QueryCache.writeTable("delete from users where id = ?"));
+		assertEquals("users", QueryCache.writeTable("DELETE FROM users"));
+		assertEquals("users", QueryCache.writeTable("truncate table users"));
+	}
+
+	@Test
+	public void writeTableQuotedSchemaAndComments() {
+		assertEquals("users", QueryCache.writeTable("UPDATE `shop`.`users` SET name = ?"));
+		assertEquals("users", QueryCache.writeTable("update \"shop\".\"Users\" set name = ?"));
+		assertEquals("users", QueryCache.writeTable("/* batch */ insert into shop.users values (?) -- tail"));
+		assertEquals("order items", QueryCache.writeTable("delete from \"Order Items\" where id = ?"));
+	}
+
+	@Test
+	public void writeTableUnknownForMultiTableOrOtherStatements() {
+		assertNull(QueryCache.writeTable("update users u join orders o on o.user_id = u.id set u.total = o.total"));
+		assertNull(QueryCache.writeTable("update users, orders set users.total = orders.total"));
+		assertNull(QueryCache.writeTable("delete u from users u join orders o on o.user_id = u.id"));
+		assertNull(QueryCache.writeTable("delete from users using users join orders"));
+		assertNull(QueryCache.writeTable("merge into users using staging on (1 = 1)"));
+		assertNull(QueryCache.writeTable("with t as (select 1) update users set x = 1"));
+		assertNull(QueryCache.writeTable("update `users set x = 1"));
+	}
+
+	@Test
+	public void writeInvalidatesOnlyTheWrittenTable() throws Exception {
+		dataSource = MyPoolDataSource.builder().url("jdbc:stub:querycache?rows=2")
+				.driverClassName(StubDriver.class.getName()).maxSize(2).initSize(1).eagerFill(true).build();
+		StubDatabase db = StubDatabase.get("querycache");
+		QueryCache cache = new QueryCache(dataSource.getPool(), 100, 1, TimeUnit.MINUTES);
+		String users = "select * from shop.users u where u.id = ?";
+		String orders = "select * from orders o join items i on i.order_id = o.id";
+
+		long before = db.getQueryCount();
+		cache.query(users, 1);
+		cache.query(orders);
+		cache.query(users, 1);
+		cache.query(orders);
+		assertEquals(2, db.getQueryCount() - before);
+
+		cache.onWrite("/* fix */ UPDATE `shop`.`Users` SET name = ? WHERE id = ?");
+		before = db.getQueryCount();
+		cache.query(users, 1);
+		cache.query(orders);
+		assertEquals("only the users query runs again", 1, db.getQueryCount() - before);
+
+		cache.onWrite("delete from items where order_id = ?");
+		before = db.getQueryCount();
+		cache.query(users, 1);
+		cache.query(orders);
+		assertEquals("only the join on items runs again", 1, db.getQueryCount() - before);
+
+		cache.onWrite("update users u join orders o on o.user_id = u.id set u.total = o.total");
+		before = db.getQueryCount();
+		cache.query(users, 1);
+		cache.query(orders);
+		assertEquals("a multi-table write clears everything", 2, db.getQueryCount() - before);
+	}
+
+	/**
+	 * 表的顺序不重要
+	 */
+	private static void assertTables(String sql, String... expected) {
+		String[] tables = QueryCache.readTables(sql);
+		assertNotNull(sql, tables);
+		assertEquals(sql, expected.length, tables.length);
+		assertEquals(sql, new HashSet<>(Arrays.asList(expected)), new HashSet<>(Arrays.asList(tables)));
+	}
+
+}
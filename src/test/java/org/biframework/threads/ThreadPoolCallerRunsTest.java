@@ -0,0 +1,102 @@
+package org.biframework.threads;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * A ThreadPoolRunnable rejected under CALLER_RUNS runs in the submitting
+ * thread and must still get its init data.
+ */
+public class ThreadPoolCallerRunsTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private ThreadPool tp;
+
+	@After
+	public void tearDown() throws InterruptedException {
+		release.countDown();
+		if (tp != null) {
+			tp.shutdown();
+			tp.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void queueModeCallerRunsGetsInitData() throws InterruptedException {
+		tp = ThreadPool.createThreadPool(false);
+		tp.setExecutionMode(ThreadPool.ExecutionMode.QUEUE);
+		tp.setQueueCapacity(1);
+		assertCallerRunsGetsInitData();
+	}
+
+	@Test
+	public void virtualModeCallerRunsGetsInitData() throws InterruptedException {
+		tp = ThreadPool.createThreadPool(false);
+		try {
+			tp.setExecutionMode(ThreadPool.ExecutionMode.VIRTUAL);
+		} catch (UnsupportedOperationException e) {
+			Assume.assumeNoException("Virtual threads need Java 21", e);
+		}
+		assertCallerRunsGetsInitData();
+	}
+
+	/**
+	 * Fill the pool with tasks that block until the test ends, then keep
+	 * submitting until one is rejected and runs in this thread.
+	 */
+	private void assertCallerRunsGetsInitData() throws InterruptedException {
+		tp.setName("CallerRunsTest");
+		tp.setMaxThreads(ThreadPool.MAX_THREADS_MIN);
+		tp.setRejectionPolicy(ThreadPool.RejectionPolicy.CALLER_RUNS);
+		tp.start();
+
+		Probe probe = new Probe(Thread.currentThread());
+		for (int i = 0; i < 1000 && tp.getRejectedCount() == 0; i++) {
+			tp.runIt(probe);
+		}
+		assertTrue("no task was rejected", tp.getRejectedCount() > 0);
+		assertNotNull("caller ran the task without thread data", probe.callerData);
+		assertSame(Probe.INIT, probe.callerData[0]);
+	}
+
+	private class Probe implements ThreadPoolRunnable {
+
+		static final String INIT = "init";
+
+		private final Thread caller;
+
+		volatile Object[] callerData;
+
+		Probe(Thread caller) {
+			this.caller = caller;
+		}
+
+		@Override
+		public Object[] getInitData() {
+			return new Object[] { INIT };
+		}
+
+		@Override
+		public void runIt(Object[] thData) {
+			if (Thread.currentThread() == caller) {
+				callerData = thData;
+				return;
+			}
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}